@@ -0,0 +1,100 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the work queues under producer contention. Not part of the library, compile it
+ * together with the library sources and run main().
+ */
+public class WorkQueueBenchmark {
+    private static final int CAPACITY = 1024;
+    private static final int CONSUMERS = 4;
+    private static final int TASKS_PER_RUN = 2_000_000;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+    private static final Runnable TASK = () -> { };
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Consumers: " + CONSUMERS + ", capacity: " + CAPACITY + ", tasks per run: " + TASKS_PER_RUN);
+
+        for (int producers : new int[]{1, 4, 16}) {
+            System.out.println();
+            System.out.println("Producers: " + producers);
+            report("LinkedBlockingQueue", producers, () -> new LinkedBlockingQueue<>(CAPACITY));
+            report("PriorityTaskQueue", producers, () -> new PriorityTaskQueue(CAPACITY, 500, TimeUnit.MILLISECONDS));
+            report("MpmcRingBufferQueue", producers, () -> new MpmcRingBufferQueue(CAPACITY));
+        }
+    }
+
+    private static void report(String name, int producers, QueueFactory factory) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(factory.create(), producers);
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            bestNanos = Math.min(bestNanos, run(factory.create(), producers));
+        }
+        double millionOpsPerSecond = TASKS_PER_RUN / (bestNanos / 1_000_000_000.0) / 1_000_000.0;
+        System.out.println(String.format("  %-20s %8.2f Mops/s  (best of %d, %d ms)",
+                name, millionOpsPerSecond, MEASURED_RUNS, TimeUnit.NANOSECONDS.toMillis(bestNanos)));
+    }
+
+    // Producers offer and spin while the queue is full, consumers take like pool workers do
+    private static long run(BlockingQueue<Runnable> queue, int producers) throws Exception {
+        int perProducer = TASKS_PER_RUN / producers;
+        int total = perProducer * producers;
+        AtomicLong consumed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers + CONSUMERS);
+
+        for (int i = 0; i < producers; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int n = 0; n < perProducer; n++) {
+                        while (!queue.offer(TASK)) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        for (int i = 0; i < CONSUMERS; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    while (consumed.get() < total) {
+                        Runnable task = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if (task != null) {
+                            task.run();
+                            consumed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startTime;
+    }
+
+    private interface QueueFactory {
+        BlockingQueue<Runnable> create();
+    }
+}
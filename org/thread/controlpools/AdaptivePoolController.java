@@ -0,0 +1,139 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples queue depth, queue wait and service time of a pool and resizes its core
+ * threads and queue capacity to hold a target queue wait. Thread counts never leave the
+ * [initial core, max pool size] range, so a device-derived max pool size stays the ceiling. The
+ * max is read on every sample, a pool shrunk under memory pressure is not grown past it.
+ */
+class AdaptivePoolController implements Runnable {
+    private static final String TAG = "AdaptivePoolController";
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000L;
+    private static final int MIN_QUEUE_CAPACITY_DIVISOR = 4;
+    private static final int MAX_QUEUE_CAPACITY_MULTIPLIER = 8;
+
+    private static volatile ScheduledExecutorService sampler;
+
+    private final PausableThreadPoolExecutor executor;
+    private final PriorityTaskQueue queue;
+    private final long targetWaitNanos;
+    private final int minCorePoolSize;
+    private final int minQueueCapacity;
+    private final int maxQueueCapacity;
+
+    private ScheduledFuture<?> sampling;
+    private long lastStarted;
+    private long lastWaitNanos;
+    private long lastCompleted;
+    private long lastServiceNanos;
+    private long lastSaturated;
+
+    AdaptivePoolController(PausableThreadPoolExecutor executor, PriorityTaskQueue queue,
+                           long targetWait, TimeUnit unit) {
+        this.executor = executor;
+        this.queue = queue;
+        this.targetWaitNanos = Math.max(1L, unit.toNanos(targetWait));
+        this.minCorePoolSize = Math.max(1, executor.getCorePoolSize());
+        int capacity = queue.getCapacity();
+        this.minQueueCapacity = Math.max(1, capacity / MIN_QUEUE_CAPACITY_DIVISOR);
+        this.maxQueueCapacity = capacity * MAX_QUEUE_CAPACITY_MULTIPLIER;
+    }
+
+    synchronized void start() {
+        if (sampling == null) {
+            sampling = getSampler().scheduleWithFixedDelay(
+                    this, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        if (executor.isShutdown()) {
+            stop();
+            return;
+        }
+
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            PlatformLog.e(TAG, "Error adjusting pool size", e);
+        }
+    }
+
+    private void adjust() {
+        ThreadPoolMetrics metrics = executor.getMetrics();
+        long started = metrics.getStartedTasks();
+        long waitNanos = metrics.getTotalQueueWaitNanos();
+        long completed = metrics.getCompletedTasks();
+        long serviceNanos = metrics.getTotalServiceNanos();
+        SaturationStats saturation = executor.getSaturationStats();
+        long saturated = saturation.aborted + saturation.callerRuns + saturation.blocked
+                + saturation.droppedOldest + saturation.spilled;
+
+        long startedDelta = started - lastStarted;
+        long completedDelta = completed - lastCompleted;
+        long avgWaitNanos = startedDelta > 0 ? (waitNanos - lastWaitNanos) / startedDelta : 0L;
+        long avgServiceNanos = completedDelta > 0 ? (serviceNanos - lastServiceNanos) / completedDelta : 0L;
+        boolean wasSaturated = saturated > lastSaturated;
+        int depth = queue.size();
+
+        lastStarted = started;
+        lastWaitNanos = waitNanos;
+        lastCompleted = completed;
+        lastServiceNanos = serviceNanos;
+        lastSaturated = saturated;
+
+        int corePoolSize = executor.getCorePoolSize();
+        int maxPoolSize = executor.getMaximumPoolSize();
+        int minCorePoolSize = Math.min(this.minCorePoolSize, maxPoolSize);
+        int capacity = queue.getCapacity();
+
+        if (avgWaitNanos > targetWaitNanos && depth > 0) {
+            if (corePoolSize < maxPoolSize) {
+                // Little's law: threads needed to drain the backlog within the target wait
+                long needed = avgServiceNanos > 0 ? (depth * avgServiceNanos) / targetWaitNanos : 1L;
+                int step = (int) Math.max(1L, Math.min(needed, maxPoolSize - corePoolSize));
+                executor.setCorePoolSize(corePoolSize + step);
+                PlatformLog.d(TAG, "Queue wait " + TimeUnit.NANOSECONDS.toMillis(avgWaitNanos)
+                        + "ms over target, core pool size " + (corePoolSize + step));
+            } else if (capacity > minQueueCapacity) {
+                // Out of threads: a shorter queue hands overload to the saturation policy sooner
+                queue.setCapacity(Math.max(minQueueCapacity, capacity * 3 / 4));
+            }
+        } else if (avgWaitNanos < targetWaitNanos / 2) {
+            if (wasSaturated && capacity < maxQueueCapacity) {
+                queue.setCapacity(Math.min(maxQueueCapacity, capacity * 2));
+            } else if (depth == 0 && corePoolSize > minCorePoolSize
+                    && executor.getActiveCount() < corePoolSize) {
+                executor.setCorePoolSize(corePoolSize - 1);
+            }
+        }
+    }
+
+    private static ScheduledExecutorService getSampler() {
+        if (sampler == null) {
+            synchronized (AdaptivePoolController.class) {
+                if (sampler == null) {
+                    sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "AdaptivePoolSampler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return sampler;
+    }
+}
@@ -0,0 +1,234 @@
+package org.thread.controlpools;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.StatFs;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Platform} binding for Android: logcat, the main looper and the system services. The
+ * engine itself never sees a {@link Context}, the app hands one over once through {@link #init}
+ * before it creates pools that size themselves for the device.
+ */
+public final class AndroidPlatform extends Platform {
+    private static final String TAG = "AndroidPlatform";
+
+    // Application context, kept to refresh the profile later and to listen for changes
+    private static volatile Context appContext;
+
+    private volatile Executor mainThreadExecutor;
+    private final Map<MemoryPressure.Listener, TrimCallbacks> pressureCallbacks = new HashMap<>();
+
+    AndroidPlatform() {
+    }
+
+    // Only the first context counts, its application context is kept
+    public static synchronized void init(Context context) {
+        if (appContext != null || context == null) {
+            return;
+        }
+        appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        new SystemSignals().register(appContext);
+        Platform.installIfAbsent(new AndroidPlatform());
+    }
+
+    // Calibrates into the app's files directory, see PoolCalibrator.enable(File)
+    public static void enableCalibration(Context context) {
+        init(context);
+        PoolCalibrator.enable(context.getFilesDir());
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable error) {
+        switch (level) {
+            case DEBUG:
+                Log.d(tag, message, error);
+                break;
+            case INFO:
+                Log.i(tag, message, error);
+                break;
+            case WARN:
+                Log.w(tag, message, error);
+                break;
+            default:
+                Log.e(tag, message, error);
+                break;
+        }
+    }
+
+    @Override
+    public Executor getMainThreadExecutor() {
+        if (mainThreadExecutor == null) {
+            synchronized (this) {
+                if (mainThreadExecutor == null) {
+                    mainThreadExecutor = new MainThreadExecutor();
+                }
+            }
+        }
+        return mainThreadExecutor;
+    }
+
+    @Override
+    public int getApiLevel() {
+        return Build.VERSION.SDK_INT;
+    }
+
+    @Override
+    protected synchronized DeviceProfile probeDevice(DeviceProfile previous) {
+        if (appContext == null) {
+            return null;
+        }
+
+        ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        if (activityManager != null) {
+            activityManager.getMemoryInfo(memoryInfo);
+        }
+
+        PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+        boolean powerSaveMode = powerManager != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && powerManager.isPowerSaveMode();
+
+        long availableStorage = Long.MAX_VALUE;
+        try {
+            availableStorage = new StatFs(appContext.getFilesDir().getPath()).getAvailableBytes();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot read available storage", e);
+        }
+
+        if (previous != null) {
+            return previous.withState(memoryInfo.lowMemory, powerSaveMode, availableStorage);
+        }
+
+        String cpuArch = Build.SUPPORTED_ABIS.length > 0 ? Build.SUPPORTED_ABIS[0] : "";
+        return new DeviceProfile(
+                Runtime.getRuntime().availableProcessors(),
+                memoryInfo.totalMem,
+                activityManager != null ? activityManager.getMemoryClass() : 0,
+                Build.VERSION.SDK_INT,
+                cpuArch.contains("armv7") || cpuArch.contains("x86"),
+                memoryInfo.lowMemory,
+                powerSaveMode,
+                availableStorage);
+    }
+
+    @Override
+    protected synchronized void watchMemoryPressure(MemoryPressure.Listener listener) {
+        if (appContext == null) {
+            Log.w(TAG, "Cannot watch memory pressure before init()");
+            return;
+        }
+        if (pressureCallbacks.containsKey(listener)) {
+            return;
+        }
+        TrimCallbacks callbacks = new TrimCallbacks(listener);
+        appContext.registerComponentCallbacks(callbacks);
+        pressureCallbacks.put(listener, callbacks);
+    }
+
+    @Override
+    protected synchronized void unwatchMemoryPressure(MemoryPressure.Listener listener) {
+        TrimCallbacks callbacks = pressureCallbacks.remove(listener);
+        if (callbacks != null) {
+            appContext.unregisterComponentCallbacks(callbacks);
+        }
+    }
+
+    @Override
+    protected synchronized MemoryPressure getMemoryPressure() {
+        ActivityManager activityManager = appContext != null
+                ? (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE)
+                : null;
+        if (activityManager == null) {
+            return MemoryPressure.NONE;
+        }
+
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        if (memoryInfo.lowMemory) {
+            return MemoryPressure.CRITICAL;
+        }
+        // The system starts killing background processes at the threshold
+        return memoryInfo.availMem < memoryInfo.threshold * 2 ? MemoryPressure.MODERATE : MemoryPressure.NONE;
+    }
+
+    private static class TrimCallbacks implements ComponentCallbacks2 {
+        private final MemoryPressure.Listener listener;
+
+        TrimCallbacks(MemoryPressure.Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level == TRIM_MEMORY_RUNNING_MODERATE || level == TRIM_MEMORY_BACKGROUND) {
+                listener.onMemoryPressure(MemoryPressure.MODERATE);
+            } else if (level != TRIM_MEMORY_UI_HIDDEN) {
+                // Running low or critical, or next in line to be killed in the background
+                listener.onMemoryPressure(MemoryPressure.CRITICAL);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            listener.onMemoryPressure(MemoryPressure.CRITICAL);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+
+    // Marks the profile stale, measuring again is left to the next reader
+    private static class SystemSignals extends BroadcastReceiver implements ComponentCallbacks2 {
+
+        void register(Context context) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_DEVICE_STORAGE_LOW);
+            filter.addAction(Intent.ACTION_DEVICE_STORAGE_OK);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            }
+            try {
+                context.registerReceiver(this, filter);
+                context.registerComponentCallbacks(this);
+            } catch (RuntimeException e) {
+                // Some contexts cannot register, the profile then stays as first measured
+                Log.w(TAG, "Cannot listen for device changes", e);
+            }
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            DeviceProfile.invalidate();
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level != TRIM_MEMORY_UI_HIDDEN) {
+                DeviceProfile.invalidate();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            DeviceProfile.invalidate();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.thread.controlpools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads submissions over several {@link ThreadPoolManager} shards. Each task goes to the less
+ * loaded of two randomly picked shards (power of two choices), which keeps the load close to
+ * even without reading every shard. Keyed submissions always go to the same shard.
+ * <p>
+ * Shutting this service down shuts down all its shards.
+ */
+public class BalancingExecutorService extends AbstractExecutorService {
+    private final ThreadPoolManager[] shards;
+
+    public BalancingExecutorService(List<ThreadPoolManager> shards) {
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one pool is required");
+        }
+        this.shards = shards.toArray(new ThreadPoolManager[0]);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shards.length == 1) {
+            shards[0].getExecutorService().execute(command);
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(shards.length);
+        int second = random.nextInt(shards.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        if (shards[second].getLoad() < shards[first].getLoad()) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+
+        try {
+            shards[first].getExecutorService().execute(command);
+        } catch (RejectedExecutionException e) {
+            // The lighter shard may have filled up in the meantime, the other choice is still worth a try
+            shards[second].getExecutorService().execute(command);
+        }
+    }
+
+    // Tasks with equal keys always run on the same shard, e.g. to keep per-key state warm
+    public void execute(Object key, Runnable command) {
+        if (key == null || command == null) {
+            throw new NullPointerException();
+        }
+        shardFor(key).getExecutorService().execute(command);
+    }
+
+    public <T> Future<T> submit(Object key, Callable<T> task) {
+        if (key == null || task == null) {
+            throw new NullPointerException();
+        }
+        RunnableFuture<T> future = newTaskFor(task);
+        execute(key, future);
+        return future;
+    }
+
+    public List<ThreadPoolManager> getShards() {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    @Override
+    public void shutdown() {
+        for (ThreadPoolManager shard : shards) {
+            shard.getExecutorService().shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        for (ThreadPoolManager shard : shards) {
+            pending.addAll(shard.getExecutorService().shutdownNow());
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ThreadPoolManager shard : shards) {
+            if (!shard.getExecutorService().isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ThreadPoolManager shard : shards) {
+            if (!shard.getExecutorService().isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolManager shard : shards) {
+            ExecutorService executor = shard.getExecutorService();
+            if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same task type as the shards use, so cancelled tasks release their queue slot
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return newTaskFor(Executors.callable(runnable, value));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new JobTask<>(callable, TaskPriority.NORMAL, ForkJoinPool.commonPool());
+    }
+
+    private ThreadPoolManager shardFor(Object key) {
+        int hash = key.hashCode();
+        // Fold in the high bits, keys that differ only there would otherwise share a shard
+        hash ^= hash >>> 16;
+        return shards[(hash & Integer.MAX_VALUE) % shards.length];
+    }
+}
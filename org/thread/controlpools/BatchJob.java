@@ -0,0 +1,96 @@
+package org.thread.controlpools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Aggregate handle of a batch submitted through {@link ThreadPoolManager#executeBatch}. A task
+ * counts as finished once it completed, failed or was cancelled. Results and errors are read
+ * from the per-task jobs.
+ */
+public class BatchJob {
+    private final List<ThreadPoolJob> jobs;
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final AtomicReference<ThreadPoolJob> firstFinished = new AtomicReference<>();
+    private final CountDownLatch allFinished;
+    private final CountDownLatch anyFinished;
+    private final Consumer<JobTask<?>> taskListener;
+
+    BatchJob(List<? extends JobTask<?>> tasks) {
+        this(tasks, null);
+    }
+
+    // The listener runs on the thread that finished the task, before the batch counts it
+    BatchJob(List<? extends JobTask<?>> tasks, Consumer<JobTask<?>> taskListener) {
+        this.taskListener = taskListener;
+        this.jobs = Collections.unmodifiableList(new ArrayList<ThreadPoolJob>(tasks));
+        this.allFinished = new CountDownLatch(tasks.size());
+        this.anyFinished = new CountDownLatch(tasks.isEmpty() ? 0 : 1);
+        for (JobTask<?> task : tasks) {
+            task.setFinishHook(this::onTaskFinished);
+        }
+    }
+
+    public List<ThreadPoolJob> getJobs() {
+        return jobs;
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    public int getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    public boolean isDone() {
+        return allFinished.getCount() == 0;
+    }
+
+    public void awaitAll() throws InterruptedException {
+        allFinished.await();
+    }
+
+    public void awaitAll(long timeoutMillis) throws InterruptedException, TimeoutException {
+        if (!allFinished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException();
+        }
+    }
+
+    // First job of the batch to finish, null for an empty batch
+    public ThreadPoolJob awaitAny() throws InterruptedException {
+        anyFinished.await();
+        return firstFinished.get();
+    }
+
+    public ThreadPoolJob awaitAny(long timeoutMillis) throws InterruptedException, TimeoutException {
+        if (!anyFinished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException();
+        }
+        return firstFinished.get();
+    }
+
+    public void cancel() {
+        for (ThreadPoolJob job : jobs) {
+            job.cancel();
+        }
+    }
+
+    private void onTaskFinished(JobTask<?> task) {
+        if (taskListener != null) {
+            taskListener.accept(task);
+        }
+        if (firstFinished.compareAndSet(null, task)) {
+            anyFinished.countDown();
+        }
+        finishedCount.incrementAndGet();
+        allFinished.countDown();
+    }
+}
@@ -0,0 +1,425 @@
+package org.thread.controlpools;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reusable heap and direct byte buffers in power-of-two size classes from 1 KB to 1 MB, so IO
+ * and decode tasks stop allocating a fresh array per call. Each thread keeps a few small buffers
+ * of its own, the rest is shared. Idle buffers never take more than the retained-bytes cap,
+ * buffers released above it are left to the garbage collector.
+ * <p>
+ * {@link PooledBuffer} is {@link AutoCloseable}, closing it returns the buffer. Buffers that are
+ * garbage collected without being closed are reported as leaks.
+ */
+public class BufferPool implements MemoryPressure.Listener {
+    private static final String TAG = "BufferPool";
+    private static final int MIN_CLASS_SHIFT = 10;
+    private static final int MAX_CLASS_SHIFT = 20;
+    private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+    // Larger buffers are rare enough to go through the shared queues only
+    private static final int MAX_THREAD_CACHED_SIZE = 64 * 1024;
+    private static final int THREAD_CACHE_PER_CLASS = 2;
+    private static final int SWEEP_INTERVAL = 256;
+    private static final long MIN_RETAINED_BYTES = 1024L * 1024;
+    // Share of the per-app memory class the pool may keep idle
+    private static final int MEMORY_CLASS_DIVISOR = 16;
+    private static final int LOW_MEMORY_CLASS_DIVISOR = 32;
+
+    private final long maxRetainedBytes;
+    private volatile long retainLimit;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final SizeClass[] heapClasses = newSizeClasses();
+    private final SizeClass[] directClasses = newSizeClasses();
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<>();
+    private final Set<ThreadCache> threadCaches = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger allocationsSinceSweep = new AtomicInteger();
+
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<>();
+    private final Set<LeakRef> outstanding = ConcurrentHashMap.newKeySet();
+    private volatile boolean leakTracing;
+
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    public BufferPool(long maxRetainedBytes) {
+        if (maxRetainedBytes <= 0) {
+            throw new IllegalArgumentException("Retained bytes cap must be positive");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.retainLimit = maxRetainedBytes;
+    }
+
+    // Cap for the idle buffers derived from the per-app memory class (the heap limit on the JVM)
+    public static long capFor(DeviceProfile profile) {
+        long memoryClassBytes = profile.memoryClassMb * 1024L * 1024;
+        int divisor = profile.isLowMemoryDevice() ? LOW_MEMORY_CLASS_DIVISOR : MEMORY_CLASS_DIVISOR;
+        return Math.max(MIN_RETAINED_BYTES, memoryClassBytes / divisor);
+    }
+
+    // Position 0 and limit size, the capacity is rounded up to the size class
+    public PooledBuffer acquire(int size) {
+        return acquire(size, false);
+    }
+
+    // Off-heap, for channels and native decoders. Direct buffers are expensive to allocate, so
+    // they profit most from pooling.
+    public PooledBuffer acquireDirect(int size) {
+        return acquire(size, true);
+    }
+
+    // Records where every buffer was acquired so leak reports point at the caller. Costs a stack
+    // trace per acquire, meant for debug builds.
+    public void setLeakTracing(boolean leakTracing) {
+        this.leakTracing = leakTracing;
+    }
+
+    // Drops all idle buffers, including the ones cached by threads
+    public void trim() {
+        trimTo(0L);
+    }
+
+    @Override
+    public void onMemoryPressure(MemoryPressure pressure) {
+        retainLimit = (long) (maxRetainedBytes * pressure.sizeFactor);
+        if (pressure != MemoryPressure.NONE) {
+            trimTo(retainLimit);
+        }
+    }
+
+    public Stats getStats() {
+        reportLeaks();
+        sweepDeadThreads();
+        return new Stats(allocations.sum(), reuses.sum(), dropped.sum(), leaks.sum(),
+                outstanding.size(), retainedBytes.get(), retainLimit);
+    }
+
+    private PooledBuffer acquire(int size, boolean direct) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative buffer size: " + size);
+        }
+        reportLeaks();
+
+        int index = classIndex(size);
+        ByteBuffer buffer = null;
+        if (index < CLASS_COUNT) {
+            buffer = takeCached(index, direct);
+            if (buffer == null) {
+                buffer = (direct ? directClasses : heapClasses)[index].queue.poll();
+                if (buffer != null) {
+                    retainedBytes.addAndGet(-buffer.capacity());
+                }
+            }
+        }
+
+        if (buffer != null) {
+            reuses.increment();
+        } else {
+            int capacity = index < CLASS_COUNT ? 1 << (index + MIN_CLASS_SHIFT) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            allocations.increment();
+            if (allocationsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+                allocationsSinceSweep.set(0);
+                sweepDeadThreads();
+            }
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+        PooledBuffer pooled = new PooledBuffer(this, buffer, direct);
+        LeakRef ref = new LeakRef(pooled, leakQueue, buffer.capacity(),
+                leakTracing ? new Throwable("Buffer acquired here") : null);
+        pooled.leakRef = ref;
+        outstanding.add(ref);
+        return pooled;
+    }
+
+    void release(PooledBuffer pooled, ByteBuffer buffer) {
+        LeakRef ref = pooled.leakRef;
+        if (ref != null) {
+            ref.clear();
+            outstanding.remove(ref);
+        }
+
+        int index = classIndex(buffer.capacity());
+        // Oversized buffers are never pooled
+        if (index >= CLASS_COUNT || buffer.capacity() != 1 << (index + MIN_CLASS_SHIFT)) {
+            return;
+        }
+        if (!reserve(buffer.capacity())) {
+            dropped.increment();
+            return;
+        }
+        if (!offerCached(index, pooled.direct, buffer)) {
+            (pooled.direct ? directClasses : heapClasses)[index].queue.offer(buffer);
+        }
+    }
+
+    private ByteBuffer takeCached(int index, boolean direct) {
+        ThreadCache cache = currentCache(false);
+        if (cache == null) {
+            return null;
+        }
+        ByteBuffer buffer = cache.poll(index, direct);
+        if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+        }
+        return buffer;
+    }
+
+    // The bytes are already reserved by the caller
+    private boolean offerCached(int index, boolean direct, ByteBuffer buffer) {
+        if (buffer.capacity() > MAX_THREAD_CACHED_SIZE) {
+            return false;
+        }
+        ThreadCache cache = currentCache(true);
+        return cache != null && cache.offer(index, direct, buffer);
+    }
+
+    private ThreadCache currentCache(boolean create) {
+        ThreadCache cache = threadCache.get();
+        if (cache == null) {
+            if (!create) {
+                return null;
+            }
+            cache = new ThreadCache(Thread.currentThread());
+            threadCache.set(cache);
+            threadCaches.add(cache);
+        }
+        return cache;
+    }
+
+    private boolean reserve(int bytes) {
+        while (true) {
+            long retained = retainedBytes.get();
+            if (retained + bytes > retainLimit) {
+                return false;
+            }
+            if (retainedBytes.compareAndSet(retained, retained + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    // Shared buffers go first, thread caches only if that was not enough
+    private void trimTo(long limit) {
+        sweepDeadThreads();
+        for (int i = CLASS_COUNT - 1; i >= 0 && retainedBytes.get() > limit; i--) {
+            drain(heapClasses[i], limit);
+            drain(directClasses[i], limit);
+        }
+        for (ThreadCache cache : threadCaches) {
+            if (retainedBytes.get() <= limit) {
+                break;
+            }
+            retainedBytes.addAndGet(-cache.clear());
+        }
+    }
+
+    private void drain(SizeClass sizeClass, long limit) {
+        ByteBuffer buffer;
+        while (retainedBytes.get() > limit && (buffer = sizeClass.queue.poll()) != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+        }
+    }
+
+    // A finished thread no longer touches its cache, so its bytes can be given back from here
+    private void sweepDeadThreads() {
+        for (ThreadCache cache : threadCaches) {
+            Thread owner = cache.owner.get();
+            // Concurrent sweeps may see the same cache, only the one that removes it gives back its bytes
+            if ((owner == null || !owner.isAlive()) && threadCaches.remove(cache)) {
+                retainedBytes.addAndGet(-cache.clear());
+            }
+        }
+    }
+
+    private void reportLeaks() {
+        LeakRef ref;
+        while ((ref = (LeakRef) leakQueue.poll()) != null) {
+            if (outstanding.remove(ref)) {
+                leaks.increment();
+                String message = "Buffer of " + ref.capacity + " bytes was garbage collected without being closed";
+                if (ref.acquiredAt != null) {
+                    PlatformLog.w(TAG, message, ref.acquiredAt);
+                } else {
+                    PlatformLog.w(TAG, message + ", enable leak tracing to see where it was acquired");
+                }
+            }
+        }
+    }
+
+    private static int classIndex(int size) {
+        if (size <= 1 << MIN_CLASS_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+    }
+
+    private static SizeClass[] newSizeClasses() {
+        SizeClass[] classes = new SizeClass[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            classes[i] = new SizeClass();
+        }
+        return classes;
+    }
+
+    /**
+     * A buffer on loan from a {@link BufferPool}. Not thread-safe, it must not be used after
+     * {@link #close()}.
+     */
+    public static class PooledBuffer implements AutoCloseable {
+        private final BufferPool pool;
+        private final boolean direct;
+        private ByteBuffer buffer;
+        LeakRef leakRef;
+
+        PooledBuffer(BufferPool pool, ByteBuffer buffer, boolean direct) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.direct = direct;
+        }
+
+        public ByteBuffer buffer() {
+            ByteBuffer current = buffer;
+            if (current == null) {
+                throw new IllegalStateException("Buffer has already been released");
+            }
+            return current;
+        }
+
+        // Backing array of a heap buffer, may be longer than the requested size
+        public byte[] array() {
+            if (direct) {
+                throw new UnsupportedOperationException("Direct buffers have no backing array");
+            }
+            return buffer().array();
+        }
+
+        public boolean isDirect() {
+            return direct;
+        }
+
+        // Releasing twice is a no-op
+        @Override
+        public void close() {
+            ByteBuffer released;
+            synchronized (this) {
+                released = buffer;
+                buffer = null;
+            }
+            if (released != null) {
+                pool.release(this, released);
+            }
+        }
+    }
+
+    public static class Stats {
+        public final long allocations;
+        public final long reuses;
+        public final long dropped;
+        public final long leaks;
+        public final int outstanding;
+        public final long retainedBytes;
+        public final long retainLimit;
+
+        Stats(long allocations, long reuses, long dropped, long leaks, int outstanding,
+              long retainedBytes, long retainLimit) {
+            this.allocations = allocations;
+            this.reuses = reuses;
+            this.dropped = dropped;
+            this.leaks = leaks;
+            this.outstanding = outstanding;
+            this.retainedBytes = retainedBytes;
+            this.retainLimit = retainLimit;
+        }
+
+        @Override
+        public String toString() {
+            return "BufferPool.Stats{allocations=" + allocations +
+                    ", reuses=" + reuses +
+                    ", dropped=" + dropped +
+                    ", leaks=" + leaks +
+                    ", outstanding=" + outstanding +
+                    ", retainedBytes=" + retainedBytes +
+                    ", retainLimit=" + retainLimit +
+                    '}';
+        }
+    }
+
+    private static class SizeClass {
+        final ConcurrentLinkedQueue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    }
+
+    // Used by its owner thread, trimmed from any thread. The lock is practically never contended.
+    private static class ThreadCache {
+        final WeakReference<Thread> owner;
+        private final ByteBuffer[][] heap = new ByteBuffer[CLASS_COUNT][THREAD_CACHE_PER_CLASS];
+        private final ByteBuffer[][] direct = new ByteBuffer[CLASS_COUNT][THREAD_CACHE_PER_CLASS];
+        private final int[] heapCount = new int[CLASS_COUNT];
+        private final int[] directCount = new int[CLASS_COUNT];
+
+        ThreadCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        synchronized ByteBuffer poll(int index, boolean isDirect) {
+            int[] counts = isDirect ? directCount : heapCount;
+            if (counts[index] == 0) {
+                return null;
+            }
+            ByteBuffer[] slots = (isDirect ? direct : heap)[index];
+            int slot = --counts[index];
+            ByteBuffer buffer = slots[slot];
+            slots[slot] = null;
+            return buffer;
+        }
+
+        synchronized boolean offer(int index, boolean isDirect, ByteBuffer buffer) {
+            int[] counts = isDirect ? directCount : heapCount;
+            if (counts[index] >= THREAD_CACHE_PER_CLASS) {
+                return false;
+            }
+            (isDirect ? direct : heap)[index][counts[index]++] = buffer;
+            return true;
+        }
+
+        // Returns the bytes dropped
+        synchronized long clear() {
+            return clear(heap, heapCount) + clear(direct, directCount);
+        }
+
+        private static long clear(ByteBuffer[][] slots, int[] counts) {
+            long bytes = 0L;
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                for (int slot = 0; slot < counts[i]; slot++) {
+                    bytes += slots[i][slot].capacity();
+                    slots[i][slot] = null;
+                }
+                counts[i] = 0;
+            }
+            return bytes;
+        }
+    }
+
+    // Weak so that a forgotten buffer can still be collected and then shows up in the queue
+    private static class LeakRef extends WeakReference<PooledBuffer> {
+        final int capacity;
+        final Throwable acquiredAt;
+
+        LeakRef(PooledBuffer referent, ReferenceQueue<PooledBuffer> queue, int capacity, Throwable acquiredAt) {
+            super(referent, queue);
+            this.capacity = capacity;
+            this.acquiredAt = acquiredAt;
+        }
+    }
+}
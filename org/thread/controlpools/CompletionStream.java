@@ -0,0 +1,97 @@
+package org.thread.controlpools;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the tasks of a batch in the order they finish, so a consumer can use fast results
+ * while slow ones are still running. Every task is handed out exactly once, finished futures
+ * never block on {@code get()}. Meant for a single consumer.
+ */
+public class CompletionStream<T> implements Iterable<Future<T>> {
+    private final BatchJob batch;
+    private final LinkedBlockingQueue<Future<T>> finished = new LinkedBlockingQueue<>();
+    private final AtomicInteger remaining;
+
+    @SuppressWarnings("unchecked")
+    CompletionStream(List<JobTask<T>> tasks) {
+        this.remaining = new AtomicInteger(tasks.size());
+        this.batch = new BatchJob(tasks, task -> finished.add((Future<T>) task));
+    }
+
+    public BatchJob getBatch() {
+        return batch;
+    }
+
+    // Next finished task, null once every task has been handed out
+    public Future<T> take() throws InterruptedException {
+        if (remaining.getAndDecrement() <= 0) {
+            remaining.incrementAndGet();
+            return null;
+        }
+        try {
+            return finished.take();
+        } catch (InterruptedException e) {
+            remaining.incrementAndGet();
+            throw e;
+        }
+    }
+
+    // Null if nothing finished within the timeout or every task has been handed out
+    public Future<T> poll(long timeoutMillis) throws InterruptedException {
+        if (remaining.getAndDecrement() <= 0) {
+            remaining.incrementAndGet();
+            return null;
+        }
+        Future<T> task = finished.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (task == null) {
+            remaining.incrementAndGet();
+        }
+        return task;
+    }
+
+    // Blocking iterator, an interrupt ends the iteration early with the interrupt flag kept
+    @Override
+    public Iterator<Future<T>> iterator() {
+        return new Iterator<Future<T>>() {
+            private Future<T> next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Future<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Future<T> current = next;
+                next = null;
+                return current;
+            }
+        };
+    }
+
+    // Emits results in completion order, the first failed or cancelled task fails the flow
+    public CoroutineFlow<T> asFlow() {
+        return CoroutineFlow.create(collector -> {
+            Future<T> task;
+            while ((task = take()) != null) {
+                collector.emit(task.get());
+            }
+        });
+    }
+}
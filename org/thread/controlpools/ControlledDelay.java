@@ -0,0 +1,60 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controlled-delay (CoDel) state of a {@link PriorityTaskQueue}. The queue is overloaded once the
+ * minimum standing queue delay seen over a whole interval is above the target, a single sample
+ * below the target ends the interval and the overload. While overloaded, workers serve the
+ * freshest tasks first and the stalest ones are shed at an increasing rate, until the standing
+ * queue drains below the target again.
+ * <p>
+ * Not thread-safe, only used under the queue lock.
+ */
+class ControlledDelay {
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final ThreadPoolMetrics metrics;
+    private long firstAboveTime;
+    private long shedNext;
+    private int shedCount;
+    private boolean isOverloaded;
+
+    ControlledDelay(long target, long interval, TimeUnit unit, ThreadPoolMetrics metrics) {
+        this.targetNanos = Math.max(1L, unit.toNanos(target));
+        this.intervalNanos = Math.max(1L, unit.toNanos(interval));
+        this.metrics = metrics;
+    }
+
+    // Called on every worker dequeue with the standing queue delay, -1 if unknown
+    boolean update(long oldestWaitNanos, long now) {
+        if (oldestWaitNanos < targetNanos) {
+            firstAboveTime = 0L;
+            isOverloaded = false;
+            return false;
+        }
+
+        if (firstAboveTime == 0L) {
+            firstAboveTime = now + intervalNanos;
+        } else if (!isOverloaded && now - firstAboveTime >= 0L) {
+            isOverloaded = true;
+            shedCount = 0;
+            shedNext = now;
+        }
+        return isOverloaded;
+    }
+
+    // CoDel control law: the gap between sheds shrinks with the square root of the shed count
+    boolean shouldShed(long now) {
+        if (!isOverloaded || now - shedNext < 0L) {
+            return false;
+        }
+        shedCount++;
+        shedNext = now + (long) (intervalNanos / Math.sqrt(shedCount));
+        return true;
+    }
+
+    void onShed() {
+        metrics.recordShed();
+    }
+}
@@ -1,17 +1,25 @@
 package org.thread.controlpools;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CoroutineChannel<T> implements AutoCloseable {
-    private final BlockingQueue<T> queue;
-    private final int capacity;
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final int initialCapacity;
+    private volatile int capacity;
     private final AtomicBoolean isClosed = new AtomicBoolean(false);
 
     public CoroutineChannel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Channel capacity must be positive");
+        }
+        this.initialCapacity = capacity;
         this.capacity = capacity;
-        this.queue = new LinkedBlockingQueue<>(capacity);
     }
 
     public static <T> CoroutineChannel<T> unlimited() {
@@ -27,16 +35,16 @@ public class CoroutineChannel<T> implements AutoCloseable {
             if (isClosed.get()) {
                 throw new ChannelClosedException("Channel is closed");
             }
-            queue.put(value);
+            put(value);
         });
     }
 
     public Coroutine<T> receive(CoroutineScope scope) {
         return scope.async(() -> {
-            if (isClosed.get() && queue.isEmpty()) {
+            if (isClosed.get() && isEmpty()) {
                 throw new ChannelClosedException("Channel is closed and empty");
             }
-            return queue.take();
+            return take();
         });
     }
 
@@ -44,17 +52,35 @@ public class CoroutineChannel<T> implements AutoCloseable {
         if (isClosed.get()) {
             return false;
         }
-        return queue.offer(value);
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                return false;
+            }
+            queue.add(value);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public T tryReceive() {
-        return queue.poll();
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public Coroutine<Void> consumeEach(Consumer<T> consumer, CoroutineScope scope) {
         return scope.launch(() -> {
-            while (!isClosed.get() || !queue.isEmpty()) {
-                T value = queue.take();
+            while (!isClosed.get() || !isEmpty()) {
+                T value = take();
                 consumer.accept(value);
             }
         });
@@ -73,6 +99,76 @@ public class CoroutineChannel<T> implements AutoCloseable {
         return capacity;
     }
 
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    // Buffered elements above a lowered capacity stay, senders wait until the channel drained below it
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Channel capacity must be positive");
+        }
+        lock.lock();
+        try {
+            int previous = this.capacity;
+            this.capacity = capacity;
+            if (capacity > previous) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private void put(T value) throws InterruptedException {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() >= capacity) {
+                notFull.await();
+            }
+            queue.add(value);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T dequeue() {
+        T value = queue.poll();
+        if (value != null && queue.size() < capacity) {
+            notFull.signal();
+        }
+        return value;
+    }
+
     public interface Consumer<T> {
         void accept(T value) throws Exception;
     }
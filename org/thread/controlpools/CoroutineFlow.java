@@ -13,6 +13,10 @@ public class CoroutineFlow<T> {
         this.emitter = emitter;
     }
 
+    public static <T> CoroutineFlow<T> create(FlowEmitter<T> emitter) {
+        return new CoroutineFlow<>(emitter);
+    }
+
     public static <T> CoroutineFlow<T> from(Iterable<T> items) {
         return new CoroutineFlow<>(collector -> {
             for (T item : items) {
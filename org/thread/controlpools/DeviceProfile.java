@@ -0,0 +1,118 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the pools need to know about the device, measured once per process and shared by every
+ * consumer so they all size themselves by the same thresholds. Hardware facts are read once.
+ * Battery saver, storage and memory state are measured again only after the system signals a
+ * change, the next {@link #get} then pays for the refresh.
+ */
+public class DeviceProfile {
+    private static final String TAG = "DeviceProfile";
+    private static final long WEAK_DEVICE_MAX_MEMORY = 4L * 1024 * 1024 * 1024;
+    private static final int WEAK_DEVICE_MAX_PROCESSORS = 2;
+    private static final int LOW_MEMORY_CLASS_MB = 128;
+    private static final long LOW_STORAGE_BYTES = 500L * 1024 * 1024;
+    // The system signals memory pressure but not its end, a low-memory reading expires instead
+    private static final long LOW_MEMORY_RECHECK_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static volatile DeviceProfile current;
+    private static volatile boolean stale;
+
+    public final int processors;
+    public final long totalMemoryBytes;
+    public final int memoryClassMb;
+    public final int sdkInt;
+    public final boolean oldCpuArchitecture;
+    public final boolean lowMemory;
+    public final boolean powerSaveMode;
+    public final long availableStorageBytes;
+    private final long measuredAt;
+
+    // For platform bindings, consumers get the shared profile from get()
+    public DeviceProfile(int processors, long totalMemoryBytes, int memoryClassMb, int sdkInt,
+                  boolean oldCpuArchitecture, boolean lowMemory, boolean powerSaveMode,
+                  long availableStorageBytes) {
+        this.processors = processors;
+        this.totalMemoryBytes = totalMemoryBytes;
+        this.memoryClassMb = memoryClassMb;
+        this.sdkInt = sdkInt;
+        this.oldCpuArchitecture = oldCpuArchitecture;
+        this.lowMemory = lowMemory;
+        this.powerSaveMode = powerSaveMode;
+        this.availableStorageBytes = availableStorageBytes;
+        this.measuredAt = System.nanoTime();
+    }
+
+    // Null if the platform cannot measure yet, on Android until AndroidPlatform.init() was called
+    public static DeviceProfile get() {
+        DeviceProfile profile = current;
+        if (profile != null && !stale && !profile.isExpired()) {
+            return profile;
+        }
+
+        synchronized (DeviceProfile.class) {
+            profile = current;
+            if (profile == null) {
+                profile = Platform.get().probeDevice(null);
+                if (profile == null) {
+                    return null;
+                }
+                current = profile;
+                PlatformLog.i(TAG, "Device profile: " + profile);
+            } else if (stale || profile.isExpired()) {
+                stale = false;
+                profile = Platform.get().probeDevice(profile);
+                current = profile;
+            }
+            return profile;
+        }
+    }
+
+    // Weak devices get the smallest pools everywhere
+    public boolean isWeakDevice() {
+        return sdkInt < Platform.API_LOLLIPOP
+                || processors <= WEAK_DEVICE_MAX_PROCESSORS
+                || totalMemoryBytes <= WEAK_DEVICE_MAX_MEMORY
+                || oldCpuArchitecture
+                || powerSaveMode
+                || lowMemory;
+    }
+
+    // Small per-app heap, buffers and caches should stay small
+    public boolean isLowMemoryDevice() {
+        return memoryClassMb <= LOW_MEMORY_CLASS_MB;
+    }
+
+    public boolean isLowStorage() {
+        return availableStorageBytes < LOW_STORAGE_BYTES;
+    }
+
+    private boolean isExpired() {
+        return lowMemory && System.nanoTime() - measuredAt > LOW_MEMORY_RECHECK_NANOS;
+    }
+
+    static void invalidate() {
+        stale = true;
+    }
+
+    // Same hardware, fresh volatile state
+    DeviceProfile withState(boolean lowMemory, boolean powerSaveMode, long availableStorageBytes) {
+        return new DeviceProfile(processors, totalMemoryBytes, memoryClassMb, sdkInt, oldCpuArchitecture,
+                lowMemory, powerSaveMode, availableStorageBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceProfile{processors=" + processors +
+                ", totalMemoryBytes=" + totalMemoryBytes +
+                ", memoryClassMb=" + memoryClassMb +
+                ", sdkInt=" + sdkInt +
+                ", oldCpuArchitecture=" + oldCpuArchitecture +
+                ", lowMemory=" + lowMemory +
+                ", powerSaveMode=" + powerSaveMode +
+                ", availableStorageBytes=" + availableStorageBytes +
+                '}';
+    }
+}
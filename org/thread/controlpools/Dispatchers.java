@@ -1,7 +1,5 @@
 package org.thread.controlpools;
 
-import android.os.Handler;
-import android.os.Looper;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -44,7 +42,7 @@ public final class Dispatchers {
         if (mainDispatcher == null) {
             synchronized (Dispatchers.class) {
                 if (mainDispatcher == null) {
-                    mainDispatcher = new MainThreadExecutor();
+                    mainDispatcher = Platform.get().getMainThreadExecutor();
                 }
             }
         }
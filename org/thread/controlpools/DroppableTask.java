@@ -0,0 +1,24 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.Future;
+
+/**
+ * Queued work that is not a {@link Future} but still has to know when the pool drops it before
+ * it ran, through queue shedding, a saturation policy or termination. Futures are cancelled
+ * instead, any other runnable is simply discarded.
+ */
+interface DroppableTask extends Runnable {
+    void onDropped();
+
+    static boolean isDroppable(Runnable task) {
+        return task instanceof Future || task instanceof DroppableTask;
+    }
+
+    static void drop(Runnable task) {
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        } else if (task instanceof DroppableTask) {
+            ((DroppableTask) task).onDropped();
+        }
+    }
+}
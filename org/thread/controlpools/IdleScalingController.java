@@ -0,0 +1,194 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the core threads of an idle pool time out to zero and starts them again ahead of the
+ * traffic that is expected next, so the first tasks after an idle period do not pay for thread
+ * creation. Two predictions drive the pre-warm: a rising arrival rate that the live threads will
+ * not keep up with, and bursts that recur at a steady period, which are warmed up shortly before
+ * the next one is due. Once the pool is down to zero and nothing arrives the sampler parks, the
+ * next submit wakes it, and a predicted burst wakes it once just ahead of time.
+ */
+class IdleScalingController implements Runnable {
+    private static final String TAG = "IdleScalingController";
+    private static final long SAMPLE_INTERVAL_MILLIS = 250L;
+    // Warm up this many samples before a periodic burst is due
+    private static final int LEAD_SAMPLES = 2;
+    private static final double SMOOTHING = 0.3;
+
+    private static volatile ScheduledExecutorService sampler;
+
+    private final PausableThreadPoolExecutor executor;
+
+    private ScheduledFuture<?> sampling;
+    private boolean stopped;
+    // Set while the sampler is parked, read on every submit
+    private volatile boolean parked;
+    private long lastSubmitted;
+    private boolean wasIdle = true;
+    private double arrivalRate;
+    private long lastBurstStart;
+    private double burstPeriodNanos;
+    private double burstWidth;
+    private int currentBurstWidth;
+    private boolean warmedForNextBurst;
+
+    IdleScalingController(PausableThreadPoolExecutor executor) {
+        this.executor = executor;
+        this.lastSubmitted = executor.getMetrics().getSubmittedTasks();
+    }
+
+    synchronized void start() {
+        if (sampling == null && !stopped) {
+            sampling = getSampler().scheduleWithFixedDelay(
+                    this, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        parked = false;
+        cancelSampling();
+    }
+
+    // Called by the executor on submit, only takes the lock when the sampler is parked
+    void wake() {
+        if (parked) {
+            resume();
+        }
+    }
+
+    private synchronized void resume() {
+        if (parked) {
+            parked = false;
+            cancelSampling();
+            start();
+        }
+    }
+
+    private void cancelSampling() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    // Stops sampling an empty pool. A known burst period leaves one wake-up just before the next burst.
+    private synchronized void park(long now) {
+        if (stopped || parked) {
+            return;
+        }
+        parked = true;
+        // A submit that came in before the flag was set did not wake us, so look once more
+        if (executor.getMetrics().getSubmittedTasks() != lastSubmitted) {
+            parked = false;
+            return;
+        }
+
+        cancelSampling();
+        if (burstPeriodNanos > 0.0 && !warmedForNextBurst) {
+            long lead = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MILLIS * LEAD_SAMPLES);
+            long delay = Math.max(0L, lastBurstStart + (long) burstPeriodNanos - lead - now);
+            sampling = getSampler().schedule(this::resume, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (executor.isShutdown()) {
+            stop();
+            return;
+        }
+
+        try {
+            long now = System.nanoTime();
+            sample(now);
+            if (wasIdle && executor.getPoolSize() == 0 && executor.getQueue().isEmpty()) {
+                park(now);
+            }
+        } catch (RuntimeException e) {
+            PlatformLog.e(TAG, "Error sampling arrivals", e);
+        }
+    }
+
+    private void sample(long now) {
+        ThreadPoolMetrics metrics = executor.getMetrics();
+        long submitted = metrics.getSubmittedTasks();
+        long arrivals = submitted - lastSubmitted;
+        lastSubmitted = submitted;
+
+        double previousRate = arrivalRate;
+        arrivalRate += SMOOTHING * (arrivals - arrivalRate);
+
+        if (arrivals > 0) {
+            if (wasIdle) {
+                onBurstStart(now);
+            }
+            // Short bursts may be drained before the sample sees them, so arrivals count as demand too
+            long demand = Math.max(arrivals, metrics.getActiveThreads() + executor.getQueue().size());
+            currentBurstWidth = (int) Math.max(currentBurstWidth, Math.min(demand, executor.getCorePoolSize()));
+        } else if (!wasIdle) {
+            burstWidth = burstWidth == 0.0
+                    ? currentBurstWidth
+                    : burstWidth + SMOOTHING * (currentBurstWidth - burstWidth);
+            currentBurstWidth = 0;
+        }
+        wasIdle = arrivals == 0;
+
+        // Rising load: make sure the next sample's worth of arrivals finds a thread each
+        if (arrivalRate > previousRate) {
+            prestart((int) Math.ceil(arrivalRate));
+        }
+
+        if (wasIdle && !warmedForNextBurst && burstPeriodNanos > 0.0) {
+            long lead = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MILLIS * LEAD_SAMPLES);
+            if (now - lastBurstStart >= (long) burstPeriodNanos - lead) {
+                warmedForNextBurst = true;
+                int started = prestart((int) Math.ceil(burstWidth));
+                if (started > 0) {
+                    PlatformLog.d(TAG, "Pre-started " + started + " threads for the next burst");
+                }
+            }
+        }
+    }
+
+    private void onBurstStart(long now) {
+        if (lastBurstStart != 0L) {
+            long period = now - lastBurstStart;
+            burstPeriodNanos = burstPeriodNanos == 0.0
+                    ? period
+                    : burstPeriodNanos + SMOOTHING * (period - burstPeriodNanos);
+        }
+        lastBurstStart = now;
+        warmedForNextBurst = false;
+    }
+
+    // Never goes beyond the core size, threads above it are still started by the queue
+    private int prestart(int threads) {
+        int target = Math.min(threads, executor.getCorePoolSize());
+        int started = 0;
+        while (executor.getPoolSize() < target && executor.prestartCoreThread()) {
+            started++;
+        }
+        return started;
+    }
+
+    private static ScheduledExecutorService getSampler() {
+        if (sampler == null) {
+            synchronized (IdleScalingController.class) {
+                if (sampler == null) {
+                    sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "IdleScalingSampler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return sampler;
+    }
+}
@@ -0,0 +1,275 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Queued task that is at the same time its own future and its own {@link ThreadPoolJob} handle,
+ * so a submission allocates one object instead of a wrapper, a future and a job. The task is held
+ * until it finishes and released right after, so a completed job does not retain what it ran.
+ */
+class JobTask<T> extends ThreadPoolJob implements RunnableFuture<T>, PrioritizedTask {
+    private static final String TAG = "JobTask";
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    // Outcome is being written, the final state follows right after
+    private static final int COMPLETING = 2;
+    private static final int INTERRUPTING = 3;
+    private static final int COMPLETED = 4;
+    private static final int FAILED = 5;
+    private static final int CANCELLED = 6;
+    private static final int DEADLINE_EXCEEDED = 7;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<JobTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(JobTask.class, "state");
+
+    private final TaskPriority priority;
+    private volatile int state;
+    private volatile long enqueueTime;
+    private volatile Thread runner;
+    private volatile PriorityTaskQueue queue;
+    // System.nanoTime() after which the task is dropped instead of run
+    private long deadline;
+    private boolean hasDeadline;
+    private String tag;
+    // Internal listener, unlike onComplete() it does not wait for children and is not replaced by callers
+    private Consumer<JobTask<?>> finishHook;
+    // Runnable or Callable, cleared once the task is finished
+    private Object task;
+    // Result or Throwable, published by the write to state
+    private Object outcome;
+
+    JobTask(Runnable task, TaskPriority priority, Executor childExecutor) {
+        super(childExecutor);
+        this.task = task;
+        this.priority = priority != null ? priority : TaskPriority.NORMAL;
+    }
+
+    JobTask(Callable<T> task, TaskPriority priority, Executor childExecutor) {
+        super(childExecutor);
+        this.task = task;
+        this.priority = priority != null ? priority : TaskPriority.NORMAL;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+            return;
+        }
+
+        if (hasDeadline && System.nanoTime() - deadline > 0L) {
+            if (complete(DEADLINE_EXCEEDED, new DeadlineExceededException("Deadline passed before the task started"))) {
+                onFinished();
+            }
+            return;
+        }
+
+        runner = Thread.currentThread();
+        boolean finished;
+        try {
+            Object current = task;
+            T result = null;
+            if (current instanceof Callable) {
+                result = ((Callable<T>) current).call();
+            } else {
+                ((Runnable) current).run();
+            }
+            finished = complete(COMPLETED, result);
+        } catch (Throwable e) {
+            finished = complete(FAILED, e);
+        } finally {
+            runner = null;
+            // A concurrent cancel(true) may still be delivering its interrupt to this thread
+            while (state == INTERRUPTING) {
+                Thread.yield();
+            }
+        }
+        // Outside the try so that a throwing callback cannot replace the outcome
+        if (finished) {
+            onFinished();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (STATE.compareAndSet(this, NEW, CANCELLED)) {
+            PriorityTaskQueue owner = queue;
+            if (owner != null) {
+                owner.onTaskCancelled(this);
+            }
+            onFinished();
+            return true;
+        }
+
+        if (mayInterruptIfRunning && STATE.compareAndSet(this, RUNNING, INTERRUPTING)) {
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            state = CANCELLED;
+            onFinished();
+            return true;
+        }
+
+        // As with FutureTask the task runs on, but its outcome is discarded
+        if (!mayInterruptIfRunning && STATE.compareAndSet(this, RUNNING, CANCELLED)) {
+            onFinished();
+            return true;
+        }
+        return false;
+    }
+
+    // Must be set before the task is submitted
+    void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    // Must be set before the task is submitted
+    void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    // Must be set before the task is submitted
+    void setFinishHook(Consumer<JobTask<?>> finishHook) {
+        this.finishHook = finishHook;
+    }
+
+    boolean isFailed() {
+        return state == FAILED;
+    }
+
+    boolean isDeadlineExceeded() {
+        return state == DEADLINE_EXCEEDED;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    // isDone() stays the job's, so a finished task reports done only once its children are
+    @Override
+    boolean isFutureDone() {
+        return state >= COMPLETED;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        if (state < COMPLETED) {
+            synchronized (this) {
+                while (state < COMPLETED) {
+                    wait();
+                }
+            }
+        }
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (state < COMPLETED) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (state < COMPLETED) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        }
+        return report();
+    }
+
+    @Override
+    public TaskPriority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    @Override
+    public void onEnqueued(PriorityTaskQueue queue, long enqueueTimeNanos) {
+        this.enqueueTime = enqueueTimeNanos;
+        this.queue = queue;
+    }
+
+    @Override
+    public void onDequeued() {
+        this.queue = null;
+    }
+
+    @Override
+    public boolean isQueued() {
+        return queue != null;
+    }
+
+    // The outcome is only written by the caller that wins the transition out of RUNNING
+    private boolean complete(int finalState, Object value) {
+        if (!STATE.compareAndSet(this, RUNNING, COMPLETING)) {
+            return false;
+        }
+        outcome = value;
+        state = finalState;
+        return true;
+    }
+
+    // Callbacks are user code, one that throws must not keep the others from running
+    private void onFinished() {
+        task = null;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (state == FAILED || state == DEADLINE_EXCEEDED) {
+            try {
+                notifyException((Throwable) outcome);
+            } catch (Throwable e) {
+                PlatformLog.e(TAG, "Exception handler failed", e);
+            }
+        }
+        Consumer<JobTask<?>> hook = finishHook;
+        if (hook != null) {
+            try {
+                hook.accept(this);
+            } catch (Throwable e) {
+                PlatformLog.e(TAG, "Finish hook failed", e);
+            }
+        }
+        try {
+            notifyCompletion();
+        } catch (Throwable e) {
+            PlatformLog.e(TAG, "Completion listener failed", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report() throws ExecutionException {
+        int current = state;
+        if (current == COMPLETED) {
+            return (T) outcome;
+        }
+        if (current == CANCELLED) {
+            throw new CancellationException();
+        }
+        throw new ExecutionException((Throwable) outcome);
+    }
+}
@@ -0,0 +1,164 @@
+package org.thread.controlpools;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * {@link Platform} binding for a plain JVM, e.g. for load tests and profiling on build machines.
+ * Logs through java.util.logging, and a single daemon thread stands in for the main thread.
+ */
+class JvmPlatform extends Platform {
+    private static final long MB = 1024L * 1024;
+    // Heap occupancy after a collection at which each level starts
+    private static final double MODERATE_HEAP_RATIO = 0.75;
+    private static final double CRITICAL_HEAP_RATIO = 0.9;
+
+    private volatile ExecutorService mainThreadExecutor;
+    private final Map<MemoryPressure.Listener, NotificationListener> pressureListeners = new HashMap<>();
+    private boolean thresholdsSet;
+
+    @Override
+    public void log(int level, String tag, String message, Throwable error) {
+        Level julLevel;
+        switch (level) {
+            case DEBUG:
+                julLevel = Level.FINE;
+                break;
+            case INFO:
+                julLevel = Level.INFO;
+                break;
+            case WARN:
+                julLevel = Level.WARNING;
+                break;
+            default:
+                julLevel = Level.SEVERE;
+                break;
+        }
+        Logger.getLogger(tag).log(julLevel, message, error);
+    }
+
+    @Override
+    public Executor getMainThreadExecutor() {
+        if (mainThreadExecutor == null) {
+            synchronized (this) {
+                if (mainThreadExecutor == null) {
+                    mainThreadExecutor = Executors.newSingleThreadExecutor(r -> {
+                        Thread thread = new Thread(r, "main");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return mainThreadExecutor;
+    }
+
+    @Override
+    public int getApiLevel() {
+        return Integer.MAX_VALUE;
+    }
+
+    // The heap limit plays the part of Android's per-app memory class
+    @Override
+    protected DeviceProfile probeDevice(DeviceProfile previous) {
+        long availableStorage = new File(System.getProperty("java.io.tmpdir", ".")).getUsableSpace();
+        if (previous != null) {
+            return previous.withState(false, false, availableStorage);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        return new DeviceProfile(
+                runtime.availableProcessors(),
+                totalPhysicalMemory(runtime),
+                (int) Math.min(Integer.MAX_VALUE, runtime.maxMemory() / MB),
+                getApiLevel(),
+                false,
+                false,
+                false,
+                availableStorage);
+    }
+
+    // Heap pools notify once their occupancy after a collection crosses the moderate ratio
+    @Override
+    protected synchronized void watchMemoryPressure(MemoryPressure.Listener listener) {
+        if (pressureListeners.containsKey(listener)) {
+            return;
+        }
+        if (!thresholdsSet) {
+            thresholdsSet = true;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                long max = pool.getUsage().getMax();
+                if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                    pool.setCollectionUsageThreshold((long) (max * MODERATE_HEAP_RATIO));
+                }
+            }
+        }
+
+        NotificationListener notificationListener = (notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                MemoryPressure pressure = getMemoryPressure();
+                listener.onMemoryPressure(pressure != MemoryPressure.NONE ? pressure : MemoryPressure.MODERATE);
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                .addNotificationListener(notificationListener, null, null);
+        pressureListeners.put(listener, notificationListener);
+    }
+
+    @Override
+    protected synchronized void unwatchMemoryPressure(MemoryPressure.Listener listener) {
+        NotificationListener notificationListener = pressureListeners.remove(listener);
+        if (notificationListener == null) {
+            return;
+        }
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(notificationListener);
+        } catch (ListenerNotFoundException e) {
+            // Already gone
+        }
+    }
+
+    @Override
+    protected MemoryPressure getMemoryPressure() {
+        double highest = 0.0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                highest = Math.max(highest, (double) usage.getUsed() / usage.getMax());
+            }
+        }
+        if (highest >= CRITICAL_HEAP_RATIO) {
+            return MemoryPressure.CRITICAL;
+        }
+        return highest >= MODERATE_HEAP_RATIO ? MemoryPressure.MODERATE : MemoryPressure.NONE;
+    }
+
+    // getTotalMemorySize() replaces the deprecated call from Java 14 on, but Java 8 must still work
+    @SuppressWarnings("deprecation")
+    private static long totalPhysicalMemory(Runtime runtime) {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return runtime.maxMemory();
+    }
+}
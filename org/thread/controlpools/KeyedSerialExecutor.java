@@ -0,0 +1,155 @@
+package org.thread.controlpools;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks with the same key one after another in submission order, tasks with different keys
+ * run in parallel on the shared pool. A key only occupies a worker while it has queued tasks and
+ * its state is dropped as soon as it goes idle.
+ */
+class KeyedSerialExecutor {
+    private final ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+    private final PausableExecutor executor;
+
+    KeyedSerialExecutor(PausableExecutor executor) {
+        this.executor = executor;
+    }
+
+    void execute(Object key, Runnable task) {
+        while (true) {
+            SerialQueue queue = queues.computeIfAbsent(key, SerialQueue::new);
+            synchronized (queue) {
+                if (queue.isRetired) {
+                    // Lost the race with the key going idle, pick up the fresh queue
+                    continue;
+                }
+                queue.tasks.addLast(task);
+                if (queue.isRunning) {
+                    return;
+                }
+                queue.isRunning = true;
+            }
+
+            try {
+                executor.execute(queue);
+            } catch (RejectedExecutionException e) {
+                // Nobody will drain the key, so the task and anything queued behind it fail
+                queue.failQueued();
+                throw e;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Drain task of one key. When the pool drops it, through a saturation policy or queue
+     * shedding, only the key's oldest task is dropped and the rest goes back to the pool instead
+     * of stalling the key. Between tasks the drain is requeued without the saturation policy, so
+     * caller-runs cannot recurse and a worker never blocks on its own queue.
+     */
+    private class SerialQueue implements DroppableTask {
+        private final Object key;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean isRunning;
+        private boolean isRetired;
+
+        SerialQueue(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            Runnable task;
+            while ((task = next()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    // The rest of the key still runs, the failure reaches this worker afterwards
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+
+                // Hand the key back to the pool between tasks so one busy key cannot hold a
+                // worker. Without room in the queue the key keeps draining on this worker.
+                if (hasNext() && executor.requeue(this)) {
+                    break;
+                }
+            }
+            rethrow(failure);
+        }
+
+        // Called when the drain was dropped from the pool queue before it ran
+        @Override
+        public void onDropped() {
+            Runnable dropped;
+            synchronized (this) {
+                dropped = tasks.pollFirst();
+            }
+            cancelTask(dropped);
+            if (!retireIfEmpty() && !executor.requeue(this)) {
+                failQueued();
+            }
+        }
+
+        private void rethrow(Throwable failure) {
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+        }
+
+        private synchronized boolean hasNext() {
+            return !tasks.isEmpty();
+        }
+
+        private synchronized Runnable next() {
+            Runnable task = tasks.pollFirst();
+            if (task == null) {
+                retire();
+            }
+            return task;
+        }
+
+        private synchronized boolean retireIfEmpty() {
+            if (!tasks.isEmpty()) {
+                return false;
+            }
+            retire();
+            return true;
+        }
+
+        void failQueued() {
+            ArrayDeque<Runnable> failed;
+            synchronized (this) {
+                failed = new ArrayDeque<>(tasks);
+                tasks.clear();
+                retire();
+            }
+            for (Runnable task : failed) {
+                cancelTask(task);
+            }
+        }
+
+        // Callers hold the lock
+        private void retire() {
+            isRunning = false;
+            isRetired = true;
+            queues.remove(key, this);
+        }
+
+        private void cancelTask(Runnable task) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets. Recording is one striped
+ * counter increment per bucket, so it is cheap enough to stay enabled in production.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSumNanos() {
+        return sum.sum();
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, count.sum(), sum.sum(), max.get());
+    }
+
+    // Bucket i holds values in [2^(i-1), 2^i), bucket 0 holds zero
+    private static int bucketOf(long value) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sumNanos;
+        public final long maxNanos;
+
+        Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? sumNanos / count : 0L;
+        }
+
+        // Upper bound of the bucket containing the given percentile, in 0..100
+        public long getPercentileNanos(double percentile) {
+            long total = 0L;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0L) {
+                return 0L;
+            }
+
+            long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(maxNanos, i == 0 ? 0L : (1L << i) - 1);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%dus, p50=%dus, p99=%dus, max=%dus}",
+                    count,
+                    TimeUnit.NANOSECONDS.toMicros(getMeanNanos()),
+                    TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(50)),
+                    TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99)),
+                    TimeUnit.NANOSECONDS.toMicros(maxNanos));
+        }
+    }
+}
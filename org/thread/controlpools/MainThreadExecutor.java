@@ -0,0 +1,21 @@
+package org.thread.controlpools;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Posts tasks to the Android main looper.
+ */
+class MainThreadExecutor implements Executor {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Runnable cannot be null");
+        }
+        handler.post(command);
+    }
+}
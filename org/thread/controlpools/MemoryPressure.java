@@ -0,0 +1,24 @@
+package org.thread.controlpools;
+
+/**
+ * How hard the system is pressing for memory, as reported by the {@link Platform}: trim-memory
+ * levels on Android, heap occupancy after garbage collection on the JVM.
+ */
+public enum MemoryPressure {
+    NONE(1.0),
+    // Give back what is cheap to rebuild
+    MODERATE(0.5),
+    // The process is close to being killed or running out of heap
+    CRITICAL(0.25);
+
+    // Share of the configured pool, buffer and cache sizes to keep at this level
+    public final double sizeFactor;
+
+    MemoryPressure(double sizeFactor) {
+        this.sizeFactor = sizeFactor;
+    }
+
+    public interface Listener {
+        void onMemoryPressure(MemoryPressure pressure);
+    }
+}
@@ -0,0 +1,320 @@
+package org.thread.controlpools;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free multi-producer/multi-consumer work queue on a preallocated ring (Vyukov's
+ * bounded MPMC queue). Every slot carries a sequence number that tells producers and consumers
+ * whose turn it is, so neither side takes a lock or allocates per task. Idle consumers spin
+ * briefly, then park until a producer hands them a wakeup.
+ * <p>
+ * The capacity is rounded up to a power of two. A removed task leaves a marker in its slot that
+ * consumers skip, its slot is only reused once the consumers have passed it. Priorities, tags and
+ * queue-side pausing need {@link PriorityTaskQueue}.
+ */
+class MpmcRingBufferQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private static final int SPIN_TRIES = 64;
+    private static final int YIELD_AFTER = 32;
+    private static final long MIN_PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PRODUCER_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Runnable REMOVED = () -> { };
+
+    private final AtomicReferenceArray<Runnable> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final PaddedCounter enqueuePosition = new PaddedCounter();
+    private final PaddedCounter dequeuePosition = new PaddedCounter();
+    private final ConcurrentLinkedQueue<Thread> parkedConsumers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    // Removed tasks still occupying their slot
+    private final AtomicInteger removedCount = new AtomicInteger();
+
+    MpmcRingBufferQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        int size = capacity > 1 ? Integer.highestOneBit(capacity - 1) << 1 : 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        checkNotNull(task);
+        long position = enqueuePosition.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0L) {
+                // The slot still holds a task from the previous lap
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+
+        buffer.lazySet(index, task);
+        // Volatile publish, orders it before the read of waitingConsumers below
+        sequences.set(index, position + 1);
+        if (waitingConsumers.get() > 0) {
+            Thread consumer = parkedConsumers.poll();
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Runnable poll() {
+        while (true) {
+            long position = dequeuePosition.get();
+            int index;
+            while (true) {
+                index = (int) position & mask;
+                long difference = sequences.get(index) - (position + 1);
+                if (difference == 0L) {
+                    if (dequeuePosition.compareAndSet(position, position + 1)) {
+                        break;
+                    }
+                    position = dequeuePosition.get();
+                } else if (difference < 0L) {
+                    return null;
+                } else {
+                    position = dequeuePosition.get();
+                }
+            }
+
+            // Taking the task out races with remove(), whoever swaps it first owns it
+            Runnable task = buffer.getAndSet(index, null);
+            // Hands the slot to the producer of the next lap
+            sequences.lazySet(index, position + mask + 1);
+            if (task != REMOVED) {
+                return task;
+            }
+            removedCount.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        return awaitTask(-1L);
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitTask(Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        awaitSpace(task, -1L);
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitSpace(task, Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    // Null if the head was removed, size() still tells whether live tasks follow
+    @Override
+    public Runnable peek() {
+        long position = dequeuePosition.get();
+        int index = (int) position & mask;
+        Runnable task = sequences.get(index) == position + 1 ? buffer.get(index) : null;
+        return task != REMOVED ? task : null;
+    }
+
+    @Override
+    public int size() {
+        // Read the consumer side first so the difference never goes negative for long
+        long dequeued = dequeuePosition.get();
+        long enqueued = enqueuePosition.get();
+        long queued = Math.min(buffer.length(), enqueued - dequeued) - removedCount.get();
+        return (int) Math.max(0L, queued);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null && size() == 0;
+    }
+
+    // Removed tasks keep their slot until the consumers pass it
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, buffer.length() - size() - removedCount.get());
+    }
+
+    // Linear scan, used by purge() and cancellation cleanup rather than on the hot path
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long end = enqueuePosition.get();
+        for (long position = dequeuePosition.get(); position < end; position++) {
+            int index = (int) position & mask;
+            if (sequences.get(index) == position + 1 && buffer.compareAndSet(index, (Runnable) o, REMOVED)) {
+                removedCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        checkNotNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int drained = 0;
+        Runnable task;
+        while (drained < maxElements && (task = poll()) != null) {
+            c.add(task);
+            drained++;
+        }
+        return drained;
+    }
+
+    // Weakly consistent snapshot, removal goes through remove(Object)
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        long end = enqueuePosition.get();
+        for (long position = dequeuePosition.get(); position < end; position++) {
+            int index = (int) position & mask;
+            Runnable task = buffer.get(index);
+            if (sequences.get(index) == position + 1 && task != null && task != REMOVED) {
+                snapshot.add(task);
+            }
+        }
+        final Iterator<Runnable> iterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                lastReturned = iterator.next();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                MpmcRingBufferQueue.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    // Negative nanos wait without a timeout
+    private Runnable awaitTask(long nanos) throws InterruptedException {
+        for (int spins = 0; spins < SPIN_TRIES; spins++) {
+            Runnable task = poll();
+            if (task != null) {
+                return task;
+            }
+            if (spins >= YIELD_AFTER) {
+                Thread.yield();
+            }
+        }
+
+        Thread current = Thread.currentThread();
+        long deadline = nanos >= 0L ? System.nanoTime() + nanos : 0L;
+        while (true) {
+            // Register before the re-check so a producer publishing in between sees us
+            waitingConsumers.incrementAndGet();
+            parkedConsumers.add(current);
+            try {
+                Runnable task = poll();
+                if (task != null) {
+                    return task;
+                }
+                if (nanos < 0L) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } finally {
+                parkedConsumers.remove(current);
+                waitingConsumers.decrementAndGet();
+            }
+        }
+    }
+
+    // Producers are rare waiters (saturation policies only), they back off instead of registering
+    private boolean awaitSpace(Runnable task, long nanos) throws InterruptedException {
+        long deadline = nanos >= 0L ? System.nanoTime() + nanos : 0L;
+        long backoff = MIN_PRODUCER_BACKOFF_NANOS;
+        while (!offer(task)) {
+            if (nanos >= 0L) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                backoff = Math.min(backoff, remaining);
+            }
+            LockSupport.parkNanos(this, backoff);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backoff = Math.min(backoff * 2, MAX_PRODUCER_BACKOFF_NANOS);
+        }
+        return true;
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    // Producers and consumers hammer their own counter, padding keeps them on separate cache lines
+    @SuppressWarnings("unused")
+    private static final class PaddedCounter extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,50 @@
+package org.thread.controlpools;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor backend of {@link ThreadPoolManager} that can hold its workers while paused.
+ */
+interface PausableExecutor extends ExecutorService {
+    void pause();
+
+    void resume();
+
+    // Tagged pause needs a queue that can park tasks by tag, holding workers instead would let a
+    // paused tag block untagged work
+    default boolean supportsTaggedPause() {
+        return false;
+    }
+
+    // Holds only the tasks submitted with the given tag. Does nothing unless supportsTaggedPause().
+    default void pause(String tag) {
+    }
+
+    default void resume(String tag) {
+    }
+
+    // Hands a task that was already accepted back to the pool without going through the
+    // saturation policy. False if there is no room for it, the caller then keeps the task.
+    default boolean requeue(Runnable task) {
+        return false;
+    }
+
+    ThreadPoolMetrics.Snapshot getMetricsSnapshot();
+
+    // Queued plus running tasks, read without taking locks so it may be slightly stale
+    int getLoad();
+
+    // Submits the tasks in order, returns how many were accepted before the first rejection
+    default int executeAll(List<? extends Runnable> tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                execute(tasks.get(i));
+            } catch (RejectedExecutionException e) {
+                return i;
+            }
+        }
+        return tasks.size();
+    }
+}
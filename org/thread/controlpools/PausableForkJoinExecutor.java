@@ -0,0 +1,190 @@
+package org.thread.controlpools;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Work-stealing backend for {@link ThreadPoolManager}. Every worker owns a deque and idle workers
+ * steal from busy ones, so tasks forked from inside the pool stay local to the forking worker.
+ */
+class PausableForkJoinExecutor extends AbstractExecutorService implements PausableExecutor {
+    private final ForkJoinPool pool;
+    private final PauseGate pauseGate = new PauseGate();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicInteger pendingHighWaterMark = new AtomicInteger();
+    private final AtomicInteger largestPoolSize = new AtomicInteger();
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+    private final int maxPendingTasks;
+    private final SaturationHandler saturationHandler;
+
+    PausableForkJoinExecutor(int parallelism, int queueCapacity, int threadPriority,
+                             SaturationHandler saturationHandler) {
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setPriority(threadPriority);
+            return thread;
+        }, null, true);
+        this.maxPendingTasks = parallelism + queueCapacity;
+        this.saturationHandler = saturationHandler;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        metrics.recordSubmitted();
+        // Fan-out from our own workers goes to the local deque and is never bounded,
+        // external submissions get the same budget as the bounded queue of the thread-pool backend
+        boolean isExternal = !isOwnWorker(Thread.currentThread());
+        if (isExternal) {
+            int pending = pendingTasks.incrementAndGet();
+            if (pending > maxPendingTasks) {
+                pendingTasks.decrementAndGet();
+                try {
+                    saturationHandler.onWorkStealingSaturated(command);
+                } catch (RejectedExecutionException e) {
+                    metrics.recordRejected();
+                    throw e;
+                }
+                return;
+            }
+            updateMax(pendingHighWaterMark, pending);
+        }
+
+        try {
+            pool.execute(new GatedTask(command, isExternal));
+        } catch (RejectedExecutionException e) {
+            if (isExternal) {
+                pendingTasks.decrementAndGet();
+            }
+            metrics.recordRejected();
+            throw e;
+        }
+    }
+
+    // Only from our own workers, whose submissions are never bounded
+    @Override
+    public boolean requeue(Runnable task) {
+        if (!isOwnWorker(Thread.currentThread())) {
+            return false;
+        }
+        try {
+            pool.execute(new GatedTask(task, false));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // Fan-out from inside the pool is not counted, it stays on the forking worker anyway
+    @Override
+    public int getLoad() {
+        return pendingTasks.get();
+    }
+
+    @Override
+    public ThreadPoolMetrics.Snapshot getMetricsSnapshot() {
+        int poolSize = pool.getPoolSize();
+        updateMax(largestPoolSize, poolSize);
+        return metrics.snapshot(poolSize, largestPoolSize.get(),
+                (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount()),
+                pendingHighWaterMark.get());
+    }
+
+    @Override
+    public void pause() {
+        pauseGate.pause();
+    }
+
+    @Override
+    public void resume() {
+        pauseGate.resume();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        pool.shutdownNow();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private boolean isOwnWorker(Thread thread) {
+        return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool;
+    }
+
+    private class GatedTask implements Runnable {
+        private final Runnable task;
+        private final boolean isExternal;
+        private final long submitTime = System.nanoTime();
+
+        GatedTask(Runnable task, boolean isExternal) {
+            this.task = task;
+            this.isExternal = isExternal;
+        }
+
+        @Override
+        public void run() {
+            boolean failed = true;
+            boolean expired = false;
+            long startTime = 0L;
+            try {
+                pauseGate.await();
+                updateMax(largestPoolSize, pool.getPoolSize());
+                startTime = System.nanoTime();
+                metrics.recordStart(startTime - submitTime);
+                task.run();
+                if (task instanceof JobTask) {
+                    failed = ((JobTask<?>) task).isFailed();
+                    expired = ((JobTask<?>) task).isDeadlineExceeded();
+                } else {
+                    failed = false;
+                }
+            } finally {
+                if (expired) {
+                    metrics.recordDeadlineExceeded();
+                } else if (startTime != 0L) {
+                    metrics.recordCompletion(System.nanoTime() - startTime, failed);
+                }
+                if (isExternal) {
+                    pendingTasks.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -1,54 +1,263 @@
 package org.thread.controlpools;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class PausableThreadPoolExecutor extends ThreadPoolExecutor {
-    private final ReentrantLock pauseLock = new ReentrantLock();
-    private final Condition unpaused = pauseLock.newCondition();
-    private boolean isPaused;
+public class PausableThreadPoolExecutor extends ThreadPoolExecutor implements PausableExecutor {
+    // Started as the first task of a worker that only exists to drain the queue
+    static final Runnable WAKE_UP = () -> {
+    };
+
+    private static final ThreadLocal<long[]> taskStartTime = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final PauseGate pauseGate = new PauseGate();
+    private final SaturationHandler saturationHandler;
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+    // Set when the work queue can hold paused tasks itself, the pause gate is then only a fallback
+    private final PriorityTaskQueue pauseAwareQueue;
+    private volatile IdleScalingController idleScaling;
 
     PausableThreadPoolExecutor(int corePoolSize, int maxPoolSize, long keepAliveTime,
                                TimeUnit unit, BlockingQueue<Runnable> workQueue,
                                ThreadFactory threadFactory) {
-        super(corePoolSize, maxPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this(corePoolSize, maxPoolSize, keepAliveTime, unit, workQueue, threadFactory,
+                new SaturationHandler(SaturationPolicy.ABORT, 0L, TimeUnit.MILLISECONDS));
+    }
+
+    PausableThreadPoolExecutor(int corePoolSize, int maxPoolSize, long keepAliveTime,
+                               TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                               ThreadFactory threadFactory, SaturationHandler saturationHandler) {
+        super(corePoolSize, maxPoolSize, keepAliveTime, unit, workQueue, threadFactory, saturationHandler);
+        this.saturationHandler = saturationHandler;
+        this.pauseAwareQueue = workQueue instanceof PriorityTaskQueue ? (PriorityTaskQueue) workQueue : null;
     }
 
     @Override
-    protected void beforeExecute(Thread t, Runnable r) {
-        super.beforeExecute(t, r);
-        pauseLock.lock();
+    public void execute(Runnable command) {
+        metrics.recordSubmitted();
+        wakeIdleScaling();
+        // While paused, queue instead of starting a worker that would run the task right away
+        if (pauseAwareQueue != null && isHeld(command) && !isShutdown() && pauseAwareQueue.force(command)) {
+            return;
+        }
+
         try {
-            while (isPaused) {
-                unpaused.await();
+            super.execute(command);
+        } catch (RejectedExecutionException e) {
+            metrics.recordRejected();
+            throw e;
+        }
+    }
+
+    // For the saturation handler handing back a task that was already counted
+    void resubmit(Runnable command) {
+        super.execute(command);
+    }
+
+    @Override
+    public boolean requeue(Runnable task) {
+        if (isShutdown()) {
+            return false;
+        }
+        boolean queued = pauseAwareQueue != null ? pauseAwareQueue.force(task) : getQueue().offer(task);
+        if (queued) {
+            ensureWorker();
+        }
+        return queued;
+    }
+
+    // Starts a worker for queued tasks if there is none, also without core threads. execute() of
+    // a no-op adds a worker to an empty pool, the saturation handler ignores it if the pool filled
+    // up in the meantime.
+    void ensureWorker() {
+        if (getPoolSize() > 0 || isShutdown() || getQueue().isEmpty()) {
+            return;
+        }
+        if (!prestartCoreThread()) {
+            try {
+                super.execute(WAKE_UP);
+            } catch (RejectedExecutionException e) {
+                // Shut down in the meantime
             }
-        } catch (InterruptedException ie) {
-            t.interrupt();
-        } finally {
-            pauseLock.unlock();
         }
     }
 
-    void pause() {
-        pauseLock.lock();
-        try {
-            isPaused = true;
-        } finally {
-            pauseLock.unlock();
+    // Queues as much of the batch as fits under one queue lock and starts the core workers needed
+    // to run it. The rest goes through execute(), which may grow the pool or apply the saturation policy.
+    @Override
+    public int executeAll(List<? extends Runnable> tasks) {
+        BlockingQueue<Runnable> queue = getQueue();
+        // Without core threads only execute() can start a worker
+        if (!(queue instanceof PriorityTaskQueue) || getCorePoolSize() == 0 || isShutdown()) {
+            return PausableExecutor.super.executeAll(tasks);
+        }
+
+        int queued = ((PriorityTaskQueue) queue).offerAll(tasks);
+        metrics.recordSubmitted(queued);
+        wakeIdleScaling();
+        for (int i = 0; i < queued && prestartCoreThread(); i++) {
+            // One new core worker per queued task at most
+        }
+
+        for (int i = queued; i < tasks.size(); i++) {
+            try {
+                execute(tasks.get(i));
+            } catch (RejectedExecutionException e) {
+                return i;
+            }
         }
+        return tasks.size();
     }
 
-    void resume() {
-        pauseLock.lock();
-        try {
-            isPaused = false;
-            unpaused.signalAll();
-        } finally {
-            pauseLock.unlock();
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        // A pause-aware queue holds paused tasks before a worker takes them, only tasks handed
+        // straight to a new worker still wait at the gate
+        if (pauseAwareQueue == null || !wasQueued(r)) {
+            pauseGate.await();
+        }
+        if (r == WAKE_UP) {
+            return;
         }
+
+        long now = System.nanoTime();
+        long waitNanos = 0L;
+        if (r instanceof PrioritizedTask) {
+            // Tasks handed straight to a new worker were never queued
+            long enqueueTime = ((PrioritizedTask) r).getEnqueueTime();
+            waitNanos = enqueueTime != 0L ? now - enqueueTime : 0L;
+        }
+        metrics.recordStart(waitNanos);
+        taskStartTime.get()[0] = now;
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof JobTask && ((JobTask<?>) r).isDeadlineExceeded()) {
+            metrics.recordDeadlineExceeded();
+        } else if (r != WAKE_UP) {
+            boolean failed = t != null || (r instanceof JobTask && ((JobTask<?>) r).isFailed());
+            metrics.recordCompletion(System.nanoTime() - taskStartTime.get()[0], failed);
+        }
+        saturationHandler.refill(this);
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        saturationHandler.cancelOverflow();
+    }
+
+    void setIdleScaling(IdleScalingController idleScaling) {
+        this.idleScaling = idleScaling;
+    }
+
+    // After the submit is counted, so a sampler that is about to park either sees it or is woken
+    private void wakeIdleScaling() {
+        IdleScalingController controller = idleScaling;
+        if (controller != null) {
+            controller.wake();
+        }
+    }
+
+    ThreadPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ThreadPoolMetrics.Snapshot getMetricsSnapshot() {
+        BlockingQueue<Runnable> queue = getQueue();
+        int highWaterMark = queue instanceof PriorityTaskQueue
+                ? ((PriorityTaskQueue) queue).getHighWaterMark()
+                : queue.size();
+        return metrics.snapshot(getPoolSize(), getLargestPoolSize(), queue.size(), highWaterMark);
+    }
+
+    @Override
+    public int getLoad() {
+        int queued = pauseAwareQueue != null ? pauseAwareQueue.sizeEstimate() : getQueue().size();
+        return queued + metrics.getActiveThreads();
+    }
+
+    SaturationStats getSaturationStats() {
+        return saturationHandler.getStats();
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (value == null) {
+            return new JobTask<>(runnable, TaskPriority.NORMAL, ForkJoinPool.commonPool());
+        }
+        return new JobTask<>(Executors.callable(runnable, value), TaskPriority.NORMAL, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new JobTask<>(callable, TaskPriority.NORMAL, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void pause() {
+        pauseGate.pause();
+        if (pauseAwareQueue != null) {
+            pauseAwareQueue.pause();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (pauseAwareQueue != null) {
+            pauseAwareQueue.resume();
+            // Tasks held during the pause were queued without starting a worker
+            ensureWorker();
+        }
+        pauseGate.resume();
+    }
+
+    @Override
+    public boolean supportsTaggedPause() {
+        return pauseAwareQueue != null;
+    }
+
+    @Override
+    public void pause(String tag) {
+        if (pauseAwareQueue != null) {
+            pauseAwareQueue.pause(tag);
+        }
+    }
+
+    @Override
+    public void resume(String tag) {
+        if (pauseAwareQueue != null) {
+            pauseAwareQueue.resume(tag);
+            ensureWorker();
+        }
+    }
+
+    private boolean isHeld(Runnable r) {
+        if (pauseGate.isPaused()) {
+            return true;
+        }
+        String tag = r instanceof PrioritizedTask ? ((PrioritizedTask) r).getTag() : null;
+        return tag != null && pauseAwareQueue.isPaused(tag);
+    }
+
+    private static boolean wasQueued(Runnable r) {
+        return !(r instanceof PrioritizedTask) || ((PrioritizedTask) r).getEnqueueTime() != 0L;
     }
-}
\ No newline at end of file
+}
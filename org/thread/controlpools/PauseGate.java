@@ -0,0 +1,51 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pause gate for worker threads. While open, passing through it is a single volatile read;
+ * workers are parked only while a pause is actually in effect.
+ */
+final class PauseGate {
+    private final ConcurrentLinkedQueue<Thread> parkedThreads = new ConcurrentLinkedQueue<>();
+    private volatile boolean isPaused;
+
+    void await() {
+        if (isPaused) {
+            awaitResume();
+        }
+    }
+
+    boolean isPaused() {
+        return isPaused;
+    }
+
+    void pause() {
+        isPaused = true;
+    }
+
+    void resume() {
+        isPaused = false;
+        for (Thread thread : parkedThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void awaitResume() {
+        Thread current = Thread.currentThread();
+        // Register before re-checking the flag so a concurrent resume() cannot miss us
+        parkedThreads.add(current);
+        try {
+            while (isPaused) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    current.interrupt();
+                    break;
+                }
+            }
+        } finally {
+            parkedThreads.remove(current);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Everything the engine needs from the operating system: logging, a main-thread executor, the
+ * device probe behind {@link DeviceProfile} and the OS API level. The Android binding is picked on
+ * ART, the plain-JVM binding everywhere else, so pools, channels and flows can run and be profiled
+ * off-device. Classes outside the bindings must not touch Android APIs directly, the Android
+ * binding gets its context from AndroidPlatform.init() instead of through the engine.
+ */
+public abstract class Platform {
+    // Same values as the android.util.Log priorities
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    // Android API levels the engine checks getApiLevel() against, without linking android.os.Build
+    static final int API_LOLLIPOP = 21;
+    static final int API_NOUGAT = 24;
+
+    private static final String ANDROID_BINDING = "org.thread.controlpools.AndroidPlatform";
+
+    private static volatile Platform current;
+
+    public static Platform get() {
+        Platform platform = current;
+        if (platform == null) {
+            synchronized (Platform.class) {
+                if (current == null) {
+                    current = "Dalvik".equals(System.getProperty("java.vm.name"))
+                            ? loadAndroidBinding()
+                            : new JvmPlatform();
+                }
+                platform = current;
+            }
+        }
+        return platform;
+    }
+
+    // Replaces the detected binding, e.g. with a recording one in load tests. Call before the
+    // first pool is created. Bindings outside this package implement the protected methods too.
+    public static void install(Platform platform) {
+        if (platform == null) {
+            throw new IllegalArgumentException("Platform must not be null");
+        }
+        current = platform;
+    }
+
+    // For a binding that sets itself up, keeps a binding that was installed or detected before
+    static synchronized void installIfAbsent(Platform platform) {
+        if (current == null) {
+            current = platform;
+        }
+    }
+
+    // Loaded by name so the engine compiles and runs without android.jar on the classpath. Apps
+    // that minify without a keep rule for it get the binding from AndroidPlatform.init() instead.
+    private static Platform loadAndroidBinding() {
+        try {
+            return (Platform) Class.forName(ANDROID_BINDING).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Platform fallback = new JvmPlatform();
+            fallback.log(WARN, "Platform", "Android binding unavailable, using the JVM binding", e);
+            return fallback;
+        }
+    }
+
+    public abstract void log(int level, String tag, String message, Throwable error);
+
+    public abstract Executor getMainThreadExecutor();
+
+    // Android API level, the JVM binding reports Integer.MAX_VALUE so no legacy fallbacks apply
+    public abstract int getApiLevel();
+
+    // Measures the device, hardware facts can be taken over from the previous profile. Null if
+    // the binding cannot measure yet, e.g. on Android before it was given a context.
+    protected abstract DeviceProfile probeDevice(DeviceProfile previous);
+
+    // Reports rising memory pressure as it is signalled, there is no signal for its end
+    protected abstract void watchMemoryPressure(MemoryPressure.Listener listener);
+
+    protected abstract void unwatchMemoryPressure(MemoryPressure.Listener listener);
+
+    // Polled to find out when signalled pressure has cleared
+    protected abstract MemoryPressure getMemoryPressure();
+}
@@ -0,0 +1,33 @@
+package org.thread.controlpools;
+
+/**
+ * Drop-in for {@code android.util.Log} that writes through the current {@link Platform}.
+ */
+final class PlatformLog {
+    private PlatformLog() {
+    }
+
+    static void d(String tag, String message) {
+        Platform.get().log(Platform.DEBUG, tag, message, null);
+    }
+
+    static void i(String tag, String message) {
+        Platform.get().log(Platform.INFO, tag, message, null);
+    }
+
+    static void w(String tag, String message) {
+        Platform.get().log(Platform.WARN, tag, message, null);
+    }
+
+    static void w(String tag, String message, Throwable error) {
+        Platform.get().log(Platform.WARN, tag, message, error);
+    }
+
+    static void e(String tag, String message) {
+        Platform.get().log(Platform.ERROR, tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable error) {
+        Platform.get().log(Platform.ERROR, tag, message, error);
+    }
+}
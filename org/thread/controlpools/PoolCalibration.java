@@ -0,0 +1,44 @@
+package org.thread.controlpools;
+
+/**
+ * Result of a {@link PoolCalibrator} run: how well this device actually scales with threads and
+ * what a thread handoff costs, plus the pool and buffer sizes derived from that.
+ */
+public class PoolCalibration {
+    // Hardware fingerprint, a stored result is only reused on the same device and OS
+    public final int processors;
+    public final int apiLevel;
+    // Largest thread count that still ran at least the target efficiency
+    public final int effectiveParallelism;
+    public final double peakSpeedup;
+    public final long contextSwitchNanos;
+    public final int recommendedMaxPoolSize;
+    public final int recommendedBufferSize;
+    public final long measuredAtMillis;
+
+    PoolCalibration(int processors, int apiLevel, int effectiveParallelism, double peakSpeedup,
+                    long contextSwitchNanos, int recommendedMaxPoolSize, int recommendedBufferSize,
+                    long measuredAtMillis) {
+        this.processors = processors;
+        this.apiLevel = apiLevel;
+        this.effectiveParallelism = effectiveParallelism;
+        this.peakSpeedup = peakSpeedup;
+        this.contextSwitchNanos = contextSwitchNanos;
+        this.recommendedMaxPoolSize = recommendedMaxPoolSize;
+        this.recommendedBufferSize = recommendedBufferSize;
+        this.measuredAtMillis = measuredAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolCalibration{processors=" + processors +
+                ", apiLevel=" + apiLevel +
+                ", effectiveParallelism=" + effectiveParallelism +
+                ", peakSpeedup=" + String.format("%.2f", peakSpeedup) +
+                ", contextSwitchNanos=" + contextSwitchNanos +
+                ", recommendedMaxPoolSize=" + recommendedMaxPoolSize +
+                ", recommendedBufferSize=" + recommendedBufferSize +
+                ", measuredAtMillis=" + measuredAtMillis +
+                '}';
+    }
+}
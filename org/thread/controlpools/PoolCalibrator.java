@@ -0,0 +1,327 @@
+package org.thread.controlpools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional startup calibration. On the first launch a time-boxed micro-benchmark runs in the
+ * background, measuring the parallel speedup of CPU-bound work and the cost of handing work to
+ * another thread. The result is stored and sizes pools and channel buffers on later launches,
+ * instead of rules on core counts, memory class and ABI names. A stored result is measured again
+ * once it is older than {@link #MAX_AGE_MILLIS}, and the pool size it recommends never leaves the
+ * range the core count rules would allow, so one noisy run cannot starve or flood the pools.
+ */
+public final class PoolCalibrator {
+    private static final String TAG = "PoolCalibrator";
+    private static final String FILE_NAME = "pool_calibration.properties";
+    // Version 1 results came from an unbounded run without warm-up
+    private static final int FORMAT_VERSION = 2;
+    private static final long DEFAULT_BUDGET_MILLIS = 50L;
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    // Thread counts are kept while each thread still gets this share of a lone thread's throughput
+    private static final double TARGET_EFFICIENCY = 0.6;
+    private static final long MIN_UNIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int MAX_UNIT_ITERATIONS = 1 << 24;
+    private static final int RUNS_PER_MEASUREMENT = 2;
+    private static final int PING_PONG_ROUNDS = 200;
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    private static final int MIN_BUFFER_SIZE = 256;
+    private static final int MAX_BUFFER_SIZE = 4096;
+    // Handoff cost at which the default buffer size is right, costlier handoffs get larger buffers
+    private static final long REFERENCE_SWITCH_NANOS = 10_000L;
+
+    private static volatile PoolCalibration current;
+    private static File storedFile;
+
+    // Sink for the benchmark work so it cannot be optimized away
+    private static volatile long sink;
+
+    private PoolCalibrator() {
+    }
+
+    // Loads the stored result, or calibrates in the background and stores it if there is none
+    // for this device and OS yet. Pools created before the run finishes keep their rule-based sizes,
+    // or the sizes of an expired result while it is being measured again.
+    public static synchronized void enable(File directory) {
+        if (storedFile != null) {
+            return;
+        }
+        storedFile = new File(directory, FILE_NAME);
+
+        PoolCalibration stored = load(storedFile);
+        if (stored != null) {
+            current = stored;
+            long age = System.currentTimeMillis() - stored.measuredAtMillis;
+            if (age >= 0L && age < MAX_AGE_MILLIS) {
+                PlatformLog.i(TAG, "Using stored calibration: " + stored);
+                return;
+            }
+            PlatformLog.i(TAG, "Stored calibration expired, calibrating again");
+        }
+
+        final File file = storedFile;
+        Thread thread = new Thread(() -> {
+            PoolCalibration calibration = calibrate(DEFAULT_BUDGET_MILLIS);
+            if (calibration == null) {
+                PlatformLog.w(TAG, "Calibration did not fit into " + DEFAULT_BUDGET_MILLIS
+                        + " ms, trying again on the next launch");
+                return;
+            }
+            current = calibration;
+            save(file, calibration);
+            PlatformLog.i(TAG, "Calibrated: " + calibration);
+        }, "PoolCalibrator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Null until a calibration has been loaded or has finished
+    public static PoolCalibration getCalibration() {
+        return current;
+    }
+
+    // Runs the benchmark on the calling thread. Null if the budget runs out before the single
+    // thread baseline is measured, pools then keep their rule-based sizes. Later steps that do not
+    // fit into the budget are skipped and fall back to conservative values.
+    public static PoolCalibration calibrate(long budgetMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1L, budgetMillis));
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        int iterations = sizeWorkUnit(deadline);
+        if (System.nanoTime() >= deadline) {
+            return null;
+        }
+        // Untimed pass on every core so the first measurement does not pay for JIT and cores
+        // still clocked down
+        measureParallel(processors, iterations, deadline);
+        if (System.nanoTime() >= deadline) {
+            return null;
+        }
+        long singleNanos = measureParallel(1, iterations, deadline);
+
+        int effectiveParallelism = 1;
+        double peakSpeedup = 1.0;
+        for (int threads : threadCounts(processors)) {
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            double speedup = (double) threads * singleNanos / measureParallel(threads, iterations, deadline);
+            peakSpeedup = Math.max(peakSpeedup, speedup);
+            if (speedup / threads >= TARGET_EFFICIENCY) {
+                effectiveParallelism = threads;
+            }
+        }
+
+        long switchNanos = System.nanoTime() < deadline ? measureHandoff() : REFERENCE_SWITCH_NANOS;
+
+        return new PoolCalibration(
+                processors,
+                Platform.get().getApiLevel(),
+                effectiveParallelism,
+                peakSpeedup,
+                switchNanos,
+                boundPoolSize(effectiveParallelism, processors),
+                bufferSizeFor(switchNanos),
+                System.currentTimeMillis());
+    }
+
+    // Within half the cores and all of them, the range the rule-based sizing picks from
+    private static int boundPoolSize(int effectiveParallelism, int processors) {
+        int min = Math.max(2, processors / 2);
+        int max = Math.max(2, processors);
+        return Math.max(min, Math.min(max, effectiveParallelism));
+    }
+
+    // Doubles the work unit until one run is long enough to time reliably
+    private static int sizeWorkUnit(long deadline) {
+        int iterations = 1 << 12;
+        while (iterations < MAX_UNIT_ITERATIONS && System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            sink += work(iterations);
+            if (System.nanoTime() - start >= MIN_UNIT_NANOS) {
+                break;
+            }
+            iterations <<= 1;
+        }
+        return iterations;
+    }
+
+    private static List<Integer> threadCounts(int processors) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 2; threads < processors; threads <<= 1) {
+            counts.add(threads);
+        }
+        if (processors > 1) {
+            counts.add(processors);
+        }
+        return counts;
+    }
+
+    // Wall time for every thread to finish one unit, best of a few runs. Runs after the first are
+    // skipped once the deadline has passed.
+    private static long measureParallel(int threads, int iterations, long deadline) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS_PER_MEASUREMENT; run++) {
+            if (run > 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    sink += work(iterations);
+                    done.countDown();
+                }, "PoolCalibrator-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+
+            try {
+                ready.await();
+                long startTime = System.nanoTime();
+                start.countDown();
+                done.await();
+                best = Math.min(best, System.nanoTime() - startTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                start.countDown();
+                break;
+            }
+        }
+        return best == Long.MAX_VALUE ? 1L : Math.max(1L, best);
+    }
+
+    // One-way handoff cost from a ping-pong between two threads that block while waiting
+    private static long measureHandoff() {
+        final int[] turn = new int[1];
+        final Object lock = new Object();
+        Thread partner = new Thread(() -> {
+            for (int round = 0; round < PING_PONG_ROUNDS; round++) {
+                synchronized (lock) {
+                    while (turn[0] != 1) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    turn[0] = 0;
+                    lock.notify();
+                }
+            }
+        }, "PoolCalibrator-handoff");
+        partner.setDaemon(true);
+        partner.start();
+
+        long start = System.nanoTime();
+        for (int round = 0; round < PING_PONG_ROUNDS; round++) {
+            synchronized (lock) {
+                turn[0] = 1;
+                lock.notify();
+                while (turn[0] != 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        partner.interrupt();
+                        Thread.currentThread().interrupt();
+                        return REFERENCE_SWITCH_NANOS;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return Math.max(1L, elapsed / (2L * PING_PONG_ROUNDS));
+    }
+
+    private static int bufferSizeFor(long switchNanos) {
+        long scaled = DEFAULT_BUFFER_SIZE * switchNanos / REFERENCE_SWITCH_NANOS;
+        int size = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, scaled));
+        // Round up to a power of two
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static long work(int iterations) {
+        long x = 0x9E3779B97F4A7C15L ^ System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    // Null if missing, unreadable or measured on different hardware or OS
+    private static PoolCalibration load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            if (Integer.parseInt(properties.getProperty("version", "0")) != FORMAT_VERSION) {
+                return null;
+            }
+            PoolCalibration calibration = new PoolCalibration(
+                    Integer.parseInt(properties.getProperty("processors")),
+                    Integer.parseInt(properties.getProperty("apiLevel")),
+                    Integer.parseInt(properties.getProperty("effectiveParallelism")),
+                    Double.parseDouble(properties.getProperty("peakSpeedup")),
+                    Long.parseLong(properties.getProperty("contextSwitchNanos")),
+                    Integer.parseInt(properties.getProperty("recommendedMaxPoolSize")),
+                    Integer.parseInt(properties.getProperty("recommendedBufferSize")),
+                    Long.parseLong(properties.getProperty("measuredAtMillis")));
+            if (calibration.processors != Runtime.getRuntime().availableProcessors()
+                    || calibration.apiLevel != Platform.get().getApiLevel()) {
+                PlatformLog.i(TAG, "Device changed since the last calibration, calibrating again");
+                return null;
+            }
+            return calibration;
+        } catch (IOException | RuntimeException e) {
+            PlatformLog.w(TAG, "Cannot read stored calibration", e);
+            return null;
+        }
+    }
+
+    // Written to a temporary file first so a crash never leaves a half-written result
+    private static void save(File file, PoolCalibration calibration) {
+        Properties properties = new Properties();
+        properties.setProperty("version", String.valueOf(FORMAT_VERSION));
+        properties.setProperty("processors", String.valueOf(calibration.processors));
+        properties.setProperty("apiLevel", String.valueOf(calibration.apiLevel));
+        properties.setProperty("effectiveParallelism", String.valueOf(calibration.effectiveParallelism));
+        properties.setProperty("peakSpeedup", String.valueOf(calibration.peakSpeedup));
+        properties.setProperty("contextSwitchNanos", String.valueOf(calibration.contextSwitchNanos));
+        properties.setProperty("recommendedMaxPoolSize", String.valueOf(calibration.recommendedMaxPoolSize));
+        properties.setProperty("recommendedBufferSize", String.valueOf(calibration.recommendedBufferSize));
+        properties.setProperty("measuredAtMillis", String.valueOf(calibration.measuredAtMillis));
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            PlatformLog.w(TAG, "Cannot store calibration", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            PlatformLog.w(TAG, "Cannot store calibration in " + file);
+            temp.delete();
+        }
+    }
+}
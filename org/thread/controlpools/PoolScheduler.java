@@ -0,0 +1,203 @@
+package org.thread.controlpools;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Timer of a single {@link ThreadPoolManager}. The timer thread only hands due tasks over to the
+ * manager's pool, the tasks themselves run on the pool workers. Periodic tasks skip ticks while
+ * their previous run is still queued or running, and ticks that fall into a pause are coalesced
+ * into one run on resume.
+ */
+class PoolScheduler {
+    private static final String TAG = "PoolScheduler";
+
+    private final Executor executor;
+    private final BooleanSupplier isPaused;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Set<PeriodicTask> periodicTasks = ConcurrentHashMap.newKeySet();
+    private final Set<PeriodicTask> heldTasks = ConcurrentHashMap.newKeySet();
+    // One-shot tasks still waiting on the timer, cancelled if the timer shuts down first
+    private final Set<JobTask<?>> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    PoolScheduler(Executor executor, BooleanSupplier isPaused) {
+        this.executor = executor;
+        this.isPaused = isPaused;
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "PoolScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    // The pool holds one-shot tasks itself while it is paused
+    void schedule(JobTask<?> task, long delay, TimeUnit unit) {
+        pendingTasks.add(task);
+        try {
+            timer.schedule(() -> {
+                if (!pendingTasks.remove(task)) {
+                    return;
+                }
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+                }
+            }, delay, unit);
+        } catch (RejectedExecutionException e) {
+            pendingTasks.remove(task);
+            task.cancel(false);
+        }
+    }
+
+    Future<Void> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        PeriodicTask periodicTask = new PeriodicTask(task, unit.toNanos(period), true);
+        periodicTasks.add(periodicTask);
+        periodicTask.timerFuture = timer.scheduleAtFixedRate(periodicTask, initialDelay, period, unit);
+        return periodicTask;
+    }
+
+    Future<Void> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        PeriodicTask periodicTask = new PeriodicTask(task, unit.toNanos(delay), false);
+        periodicTasks.add(periodicTask);
+        periodicTask.timerFuture = timer.schedule(periodicTask, initialDelay, unit);
+        return periodicTask;
+    }
+
+    void onResume() {
+        for (PeriodicTask task : heldTasks) {
+            if (heldTasks.remove(task)) {
+                task.dispatch();
+            }
+        }
+    }
+
+    void shutdown() {
+        for (PeriodicTask task : periodicTasks) {
+            task.cancel(false);
+        }
+        timer.shutdownNow();
+        for (JobTask<?> task : pendingTasks) {
+            if (pendingTasks.remove(task)) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private class PeriodicTask implements Runnable, Future<Void> {
+        private final Runnable task;
+        private final long periodNanos;
+        private final boolean isFixedRate;
+        private final AtomicBoolean isInFlight = new AtomicBoolean();
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+        private final Runnable runOnce = this::runOnce;
+        private volatile ScheduledFuture<?> timerFuture;
+
+        PeriodicTask(Runnable task, long periodNanos, boolean isFixedRate) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.isFixedRate = isFixedRate;
+        }
+
+        // Timer tick
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+            if (isPaused.getAsBoolean()) {
+                heldTasks.add(this);
+                return;
+            }
+            dispatch();
+        }
+
+        void dispatch() {
+            // Previous run is still queued or running, this tick is coalesced into it
+            if (isCancelled() || !isInFlight.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                executor.execute(runOnce);
+            } catch (RejectedExecutionException e) {
+                isInFlight.set(false);
+                scheduleNext();
+            }
+        }
+
+        private void runOnce() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                PlatformLog.e(TAG, "Error in periodic task", e);
+            } finally {
+                isInFlight.set(false);
+                scheduleNext();
+            }
+        }
+
+        private void scheduleNext() {
+            if (isFixedRate || isCancelled()) {
+                return;
+            }
+            try {
+                timerFuture = timer.schedule(this, periodNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                cancel(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isCancelled()) {
+                return false;
+            }
+            cancelled.countDown();
+            ScheduledFuture<?> future = timerFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+            heldTasks.remove(this);
+            periodicTasks.remove(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.getCount() == 0;
+        }
+
+        @Override
+        public boolean isDone() {
+            return isCancelled();
+        }
+
+        // A periodic task only completes by being cancelled
+        @Override
+        public Void get() throws InterruptedException {
+            cancelled.await();
+            throw new CancellationException();
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if (!cancelled.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            throw new CancellationException();
+        }
+    }
+}
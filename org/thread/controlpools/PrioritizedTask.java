@@ -0,0 +1,21 @@
+package org.thread.controlpools;
+
+/**
+ * Task that carries its lane in {@link PriorityTaskQueue} and the time it was queued. The queue
+ * calls the enqueue/dequeue hooks under its lock, a task cancelled while queued reports back
+ * through {@link PriorityTaskQueue#onTaskCancelled} so its slot is released immediately.
+ */
+interface PrioritizedTask extends Runnable {
+    TaskPriority getPriority();
+
+    // Null for untagged tasks, which are only held by a pause of the whole queue
+    String getTag();
+
+    long getEnqueueTime();
+
+    void onEnqueued(PriorityTaskQueue queue, long enqueueTimeNanos);
+
+    void onDequeued();
+
+    boolean isQueued();
+}
@@ -0,0 +1,821 @@
+package org.thread.controlpools;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded work queue with one FIFO lane per {@link TaskPriority}. The capacity is shared by all
+ * lanes. A queued task climbs one priority level for every aging interval it has waited, so a
+ * steady stream of high-priority work cannot starve the lower lanes.
+ * <p>
+ * Cancelling a queued task frees its capacity slot right away. The entry stays behind as a
+ * tombstone that is skipped when it reaches the head of its lane.
+ * <p>
+ * With a {@link ControlledDelay} attached, a standing queue switches the workers to LIFO and
+ * sheds the stalest tasks that can be dropped, see {@link DroppableTask}.
+ * <p>
+ * Pausing holds tasks in the queue instead of on the workers. A paused tag moves its tasks out of
+ * the lanes into a parking list, they keep their queue slot and can still be cancelled.
+ */
+class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private static final int LANE_COUNT = TaskPriority.values().length;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 64;
+    // How far past unsheddable tasks the controlled delay looks into a lane
+    private static final int MAX_SHED_SCAN = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Runnable>[] lanes;
+    private final long agingNanos;
+    private volatile int capacity;
+    private volatile ThreadPoolExecutor eagerExecutor;
+    private volatile ControlledDelay controlledDelay;
+    // Task shed by the last worker dequeue, cancelled once the lock is released
+    private Runnable shedTask;
+    // Only written under the lock, volatile so sizeEstimate() can skip it
+    private volatile int count;
+    private int idleConsumers;
+    private int highWaterMark;
+    private int tombstones;
+    private boolean isPaused;
+    // Keys are the paused tags, values their parked tasks in enqueue order
+    private final HashMap<String, ArrayDeque<Runnable>> parkedByTag = new HashMap<>();
+    private int parkedCount;
+
+    @SuppressWarnings("unchecked")
+    PriorityTaskQueue(int capacity, long agingTime, TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.agingNanos = Math.max(1L, unit.toNanos(agingTime));
+        this.lanes = (ArrayDeque<Runnable>[]) new ArrayDeque<?>[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+    }
+
+    // Eager mode: ThreadPoolExecutor only grows past its core size when offer() fails, so offer()
+    // refuses tasks while the pool can still grow and no idle worker is waiting to take them
+    void setEagerExecutor(ThreadPoolExecutor executor) {
+        this.eagerExecutor = executor;
+    }
+
+    boolean isEager() {
+        return eagerExecutor != null;
+    }
+
+    void setControlledDelay(ControlledDelay controlledDelay) {
+        this.controlledDelay = controlledDelay;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        checkNotNull(task);
+        ThreadPoolExecutor executor = eagerExecutor;
+        // Read outside our lock, the executor takes its own lock and calls into the queue under it
+        boolean canSpawn = executor != null && executor.getPoolSize() < executor.getMaximumPoolSize();
+        lock.lock();
+        try {
+            if (count >= capacity || (canSpawn && count >= idleConsumers)) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues the task if there is space, bypassing the eager spawning rule
+    boolean force(Runnable task) {
+        checkNotNull(task);
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues the tasks in order under one lock until the queue is full, then wakes at most one
+    // idle worker per queued task. Returns how many tasks were queued.
+    int offerAll(List<? extends Runnable> tasks) {
+        ThreadPoolExecutor executor = eagerExecutor;
+        boolean canSpawn = executor != null && executor.getPoolSize() < executor.getMaximumPoolSize();
+        lock.lock();
+        try {
+            int queued = 0;
+            int available = 0;
+            for (Runnable task : tasks) {
+                checkNotNull(task);
+                if (count >= capacity || (canSpawn && count >= idleConsumers)) {
+                    break;
+                }
+                if (insert(task)) {
+                    available++;
+                }
+                queued++;
+            }
+            for (int i = Math.min(available, idleConsumers); i > 0; i--) {
+                notEmpty.signal();
+            }
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        checkNotNull(task);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable task;
+        Runnable shed;
+        lock.lockInterruptibly();
+        try {
+            while (available() == 0) {
+                idleConsumers++;
+                try {
+                    notEmpty.await();
+                } finally {
+                    idleConsumers--;
+                }
+            }
+            task = dequeueForWorker();
+            shed = takeShedTask();
+        } finally {
+            lock.unlock();
+        }
+        cancelShed(shed);
+        return task;
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        Runnable task;
+        Runnable shed;
+        lock.lockInterruptibly();
+        try {
+            while (available() == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                idleConsumers++;
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } finally {
+                    idleConsumers--;
+                }
+            }
+            task = dequeueForWorker();
+            shed = takeShedTask();
+        } finally {
+            lock.unlock();
+        }
+        cancelShed(shed);
+        return task;
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return available() == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void pause() {
+        lock.lock();
+        try {
+            isPaused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void resume() {
+        lock.lock();
+        try {
+            isPaused = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isPaused() {
+        lock.lock();
+        try {
+            return isPaused;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void pause(String tag) {
+        checkNotNull(tag);
+        lock.lock();
+        try {
+            if (parkedByTag.containsKey(tag)) {
+                return;
+            }
+            ArrayDeque<Runnable> parked = new ArrayDeque<>();
+            for (ArrayDeque<Runnable> lane : lanes) {
+                Iterator<Runnable> it = lane.iterator();
+                while (it.hasNext()) {
+                    Runnable task = it.next();
+                    if (!isTombstone(task) && tag.equals(tagOf(task))) {
+                        it.remove();
+                        parked.addLast(task);
+                    }
+                }
+            }
+            parkedCount += parked.size();
+            parkedByTag.put(tag, parked);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void resume(String tag) {
+        checkNotNull(tag);
+        lock.lock();
+        try {
+            ArrayDeque<Runnable> parked = parkedByTag.remove(tag);
+            if (parked == null) {
+                return;
+            }
+
+            List<List<Runnable>> byLane = new ArrayList<>(LANE_COUNT);
+            for (int i = 0; i < LANE_COUNT; i++) {
+                byLane.add(new ArrayList<Runnable>());
+            }
+            for (Runnable task : parked) {
+                if (isTombstone(task)) {
+                    tombstones--;
+                } else {
+                    byLane.get(laneOf(task)).add(task);
+                    parkedCount--;
+                }
+            }
+            // Merge back by enqueue time so resumed tasks keep their place in line
+            for (int i = 0; i < LANE_COUNT; i++) {
+                if (!byLane.get(i).isEmpty()) {
+                    lanes[i] = mergeByEnqueueTime(lanes[i], byLane.get(i));
+                }
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isPaused(String tag) {
+        lock.lock();
+        try {
+            return tag != null && parkedByTag.containsKey(tag);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int sizeEstimate() {
+        return count;
+    }
+
+    int getHighWaterMark() {
+        lock.lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    // Shrinking below the current size keeps queued tasks, new offers fail until it drains
+    void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Removes the oldest task of the lowest non-empty lane, used when shedding load
+    Runnable pollEvictable() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes) {
+                purgeHead(lane);
+                Runnable task = lane.pollFirst();
+                if (task != null) {
+                    markDequeued(task);
+                    return task;
+                }
+            }
+            for (ArrayDeque<Runnable> parked : parkedByTag.values()) {
+                Runnable task;
+                while ((task = parked.pollFirst()) != null) {
+                    if (isTombstone(task)) {
+                        tombstones--;
+                        continue;
+                    }
+                    parkedCount--;
+                    markDequeued(task);
+                    return task;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            int lane = count - parkedCount == 0 ? -1 : selectLane(System.nanoTime());
+            return lane < 0 ? null : lanes[lane].peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return Math.max(0, capacity - count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes) {
+                if (lane.remove(o)) {
+                    if (isTombstone((Runnable) o)) {
+                        tombstones--;
+                        return false;
+                    }
+                    markDequeued((Runnable) o);
+                    return true;
+                }
+            }
+            for (ArrayDeque<Runnable> parked : parkedByTag.values()) {
+                if (parked.remove(o)) {
+                    if (isTombstone((Runnable) o)) {
+                        tombstones--;
+                        return false;
+                    }
+                    parkedCount--;
+                    markDequeued((Runnable) o);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        checkNotNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            // Drains paused and parked tasks too, used by shutdownNow()
+            int drained = 0;
+            while (drained < maxElements && count - parkedCount > 0) {
+                c.add(dequeue());
+                drained++;
+            }
+            for (ArrayDeque<Runnable> parked : parkedByTag.values()) {
+                Runnable task;
+                while (drained < maxElements && (task = parked.pollFirst()) != null) {
+                    if (isTombstone(task)) {
+                        tombstones--;
+                        continue;
+                    }
+                    parkedCount--;
+                    markDequeued(task);
+                    c.add(task);
+                    drained++;
+                }
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(count);
+            for (int i = LANE_COUNT - 1; i >= 0; i--) {
+                for (Runnable task : lanes[i]) {
+                    if (!isTombstone(task)) {
+                        snapshot.add(task);
+                    }
+                }
+            }
+            for (ArrayDeque<Runnable> parked : parkedByTag.values()) {
+                for (Runnable task : parked) {
+                    if (!isTombstone(task)) {
+                        snapshot.add(task);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new SnapshotIterator(snapshot);
+    }
+
+    // Called by a task cancelled while queued, releases its slot without touching the lanes
+    void onTaskCancelled(PrioritizedTask task) {
+        lock.lock();
+        try {
+            if (!task.isQueued()) {
+                return;
+            }
+            task.onDequeued();
+            count--;
+            tombstones++;
+            if (task.getTag() != null && parkedByTag.containsKey(task.getTag())) {
+                parkedCount--;
+            }
+            notFull.signal();
+            if (tombstones > Math.max(capacity, MIN_TOMBSTONES_TO_COMPACT)) {
+                purgeTombstones();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Physically drops all tombstones, only needed when cancellations outpace the workers
+    void purgeTombstones() {
+        lock.lock();
+        try {
+            if (tombstones == 0) {
+                return;
+            }
+            for (ArrayDeque<Runnable> lane : lanes) {
+                lane.removeIf(this::isTombstone);
+            }
+            for (ArrayDeque<Runnable> parked : parkedByTag.values()) {
+                parked.removeIf(this::isTombstone);
+            }
+            tombstones = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        if (insert(task)) {
+            notEmpty.signal();
+        }
+    }
+
+    // Returns whether a worker can take the task right away
+    private boolean insert(Runnable task) {
+        // Cancelled before it got here, e.g. while parked in the saturation overflow buffer
+        if (task instanceof Future && ((Future<?>) task).isCancelled()) {
+            return false;
+        }
+
+        if (task instanceof PrioritizedTask) {
+            ((PrioritizedTask) task).onEnqueued(this, System.nanoTime());
+        }
+        if (++count > highWaterMark) {
+            highWaterMark = count;
+        }
+
+        String tag = tagOf(task);
+        ArrayDeque<Runnable> parked = tag != null ? parkedByTag.get(tag) : null;
+        if (parked != null) {
+            parked.addLast(task);
+            parkedCount++;
+            return false;
+        }
+        lanes[laneOf(task)].addLast(task);
+        return !isPaused;
+    }
+
+    // Tasks a worker may take now, parked tasks and a paused queue do not count
+    private int available() {
+        return isPaused ? 0 : count - parkedCount;
+    }
+
+    private Runnable dequeue() {
+        Runnable task = lanes[selectLane(System.nanoTime())].pollFirst();
+        markDequeued(task);
+        return task;
+    }
+
+    // Worker path, consults the controlled delay before picking a task
+    private Runnable dequeueForWorker() {
+        ControlledDelay codel = controlledDelay;
+        if (codel == null) {
+            return dequeue();
+        }
+
+        long now = System.nanoTime();
+        if (!codel.update(standingWait(now), now)) {
+            return dequeue();
+        }
+
+        // Never shed the last task, the worker came for something to run
+        if (count - parkedCount > 1 && codel.shouldShed(now)) {
+            shedTask = evictOldest();
+            if (shedTask != null) {
+                codel.onShed();
+            }
+        }
+
+        // Tasks that cannot be shed would starve under LIFO for as long as the overload lasts
+        for (int i = LANE_COUNT - 1; i >= 0; i--) {
+            purgeHead(lanes[i]);
+            Runnable head = lanes[i].peekFirst();
+            if (head != null && !DroppableTask.isDroppable(head)) {
+                lanes[i].pollFirst();
+                markDequeued(head);
+                return head;
+            }
+        }
+
+        // Overloaded: the freshest task of the highest lane still has a chance to be useful
+        for (int i = LANE_COUNT - 1; i >= 0; i--) {
+            purgeTail(lanes[i]);
+            Runnable task = lanes[i].pollLast();
+            if (task != null) {
+                markDequeued(task);
+                return task;
+            }
+        }
+        return null;
+    }
+
+    // Only droppable tasks are shed, their callers see the cancellation. Plain runnables such as
+    // periodic runs are never dropped and are skipped over.
+    private Runnable evictOldest() {
+        for (ArrayDeque<Runnable> lane : lanes) {
+            purgeHead(lane);
+            Iterator<Runnable> iterator = lane.iterator();
+            for (int scanned = 0; scanned < MAX_SHED_SCAN && iterator.hasNext(); scanned++) {
+                Runnable task = iterator.next();
+                if (DroppableTask.isDroppable(task) && !isTombstone(task)) {
+                    iterator.remove();
+                    markDequeued(task);
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Queue delay the controlled delay acts on: the shortest wait among the oldest sheddable task
+    // of each lane, so one stale lane or a task that cannot be shed does not hold the queue in
+    // overload while the rest of it flows. -1 if nothing sheddable is queued.
+    private long standingWait(long now) {
+        long standingWait = -1L;
+        for (ArrayDeque<Runnable> lane : lanes) {
+            purgeHead(lane);
+            Iterator<Runnable> iterator = lane.iterator();
+            for (int scanned = 0; scanned < MAX_SHED_SCAN && iterator.hasNext(); scanned++) {
+                Runnable task = iterator.next();
+                if (task instanceof Future && task instanceof PrioritizedTask && !isTombstone(task)) {
+                    long wait = now - ((PrioritizedTask) task).getEnqueueTime();
+                    standingWait = standingWait < 0L ? wait : Math.min(standingWait, wait);
+                    break;
+                }
+            }
+        }
+        return standingWait;
+    }
+
+    private Runnable takeShedTask() {
+        Runnable task = shedTask;
+        shedTask = null;
+        return task;
+    }
+
+    private static void cancelShed(Runnable task) {
+        if (task != null) {
+            DroppableTask.drop(task);
+        }
+    }
+
+    private void markDequeued(Runnable task) {
+        if (task instanceof PrioritizedTask) {
+            ((PrioritizedTask) task).onDequeued();
+        }
+        count--;
+        notFull.signal();
+    }
+
+    private void purgeHead(ArrayDeque<Runnable> lane) {
+        Runnable head;
+        while ((head = lane.peekFirst()) != null && isTombstone(head)) {
+            lane.pollFirst();
+            tombstones--;
+        }
+    }
+
+    private void purgeTail(ArrayDeque<Runnable> lane) {
+        Runnable tail;
+        while ((tail = lane.peekLast()) != null && isTombstone(tail)) {
+            lane.pollLast();
+            tombstones--;
+        }
+    }
+
+    private static int laneOf(Runnable task) {
+        return task instanceof PrioritizedTask
+                ? ((PrioritizedTask) task).getPriority().ordinal()
+                : TaskPriority.NORMAL.ordinal();
+    }
+
+    private static String tagOf(Runnable task) {
+        return task instanceof PrioritizedTask ? ((PrioritizedTask) task).getTag() : null;
+    }
+
+    private static long enqueueTimeOf(Runnable task) {
+        return task instanceof PrioritizedTask ? ((PrioritizedTask) task).getEnqueueTime() : Long.MIN_VALUE;
+    }
+
+    private static ArrayDeque<Runnable> mergeByEnqueueTime(ArrayDeque<Runnable> lane, List<Runnable> resumed) {
+        ArrayDeque<Runnable> merged = new ArrayDeque<>(lane.size() + resumed.size());
+        int next = 0;
+        for (Runnable task : lane) {
+            while (next < resumed.size() && enqueueTimeOf(resumed.get(next)) - enqueueTimeOf(task) < 0L) {
+                merged.addLast(resumed.get(next++));
+            }
+            merged.addLast(task);
+        }
+        while (next < resumed.size()) {
+            merged.addLast(resumed.get(next++));
+        }
+        return merged;
+    }
+
+    private boolean isTombstone(Runnable task) {
+        return task instanceof PrioritizedTask && !((PrioritizedTask) task).isQueued();
+    }
+
+    // Picks the lane whose head has the highest aged level, ties go to the higher lane
+    private int selectLane(long now) {
+        int selected = -1;
+        long bestLevel = Long.MIN_VALUE;
+        for (int i = LANE_COUNT - 1; i >= 0; i--) {
+            purgeHead(lanes[i]);
+            Runnable head = lanes[i].peekFirst();
+            if (head == null) {
+                continue;
+            }
+            long level = i + agedLevels(head, now);
+            if (level > bestLevel) {
+                bestLevel = level;
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    private long agedLevels(Runnable task, long now) {
+        if (task instanceof PrioritizedTask) {
+            return (now - ((PrioritizedTask) task).getEnqueueTime()) / agingNanos;
+        }
+        return 0L;
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private class SnapshotIterator implements Iterator<Runnable> {
+        private final List<Runnable> snapshot;
+        private int cursor;
+        private Runnable lastReturned;
+
+        SnapshotIterator(List<Runnable> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < snapshot.size();
+        }
+
+        @Override
+        public Runnable next() {
+            if (cursor >= snapshot.size()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = snapshot.get(cursor++);
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            PriorityTaskQueue.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+}
@@ -1,55 +1,75 @@
 package org.thread.controlpools;
 
-import android.app.ActivityManager;
 import android.content.Context;
 import android.os.Build;
 import android.os.Process;
-import android.os.StatFs;
-import android.util.Log;
 
-public class ResourceOptimizer {
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ResourceOptimizer implements MemoryPressure.Listener, AutoCloseable {
     private static final String TAG = "ResourceOptimizer";
-    private static final int MIN_MEMORY_CLASS = 128; // MB
-    private static final long MIN_FREE_STORAGE = 500 * 1024 * 1024; // 500MB
     private static final int DEFAULT_BUFFER_SIZE = 1024;
+    // Конец нехватки памяти система не сообщает, поэтому уровень перепроверяется
+    private static final long PRESSURE_RECHECK_MILLIS = 30_000L;
+
+    private static volatile ScheduledExecutorService recheckTimer;
     
-    private final Context context;
-    private final ActivityManager activityManager;
     private boolean isLowMemoryDevice;
     private boolean isLowStorageDevice;
     private int memoryClass;
     private int maxPoolSize;
     private int bufferSize;
+    private volatile MemoryPressure memoryPressure = MemoryPressure.NONE;
+    private ScheduledFuture<?> pressureRecheck;
+    private final List<WeakReference<ThreadPoolManager>> pools = new ArrayList<>();
+    private final List<WeakReference<CoroutineChannel<?>>> channels = new ArrayList<>();
+    private final List<MemoryPressure.Listener> pressureListeners = new CopyOnWriteArrayList<>();
+    private final BufferPool bufferPool;
+    private final PressureWatch pressureWatch = new PressureWatch(this);
 
     public ResourceOptimizer(Context context) {
-        this.context = context;
-        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        analyzeDevice();
+        AndroidPlatform.init(context);
+        DeviceProfile profile = DeviceProfile.get();
+        analyzeDevice(profile);
+        // Пул буферов ограничен долей памяти приложения и сжимается вместе с остальными ресурсами
+        bufferPool = new BufferPool(BufferPool.capFor(profile));
+        pressureListeners.add(bufferPool);
+        Platform.get().watchMemoryPressure(pressureWatch);
     }
 
-    private void analyzeDevice() {
-        // Проверка памяти
-        memoryClass = activityManager.getMemoryClass();
-        isLowMemoryDevice = memoryClass <= MIN_MEMORY_CLASS;
-
-        // Проверка хранилища
-        StatFs stat = new StatFs(context.getFilesDir().getPath());
-        long availableBytes = stat.getAvailableBytes();
-        isLowStorageDevice = availableBytes < MIN_FREE_STORAGE;
+    private void analyzeDevice(DeviceProfile profile) {
+        // Память и хранилище берутся из общего профиля устройства
+        memoryClass = profile.memoryClassMb;
+        isLowMemoryDevice = profile.isLowMemoryDevice();
+        isLowStorageDevice = profile.isLowStorage();
 
         // Определение оптимальных параметров
         adjustParameters();
         
-        Log.i(TAG, String.format("Device analysis: Memory Class: %dMB, Low Memory: %b, Low Storage: %b",
+        PlatformLog.i(TAG, String.format("Device analysis: Memory Class: %dMB, Low Memory: %b, Low Storage: %b",
                 memoryClass, isLowMemoryDevice, isLowStorageDevice));
     }
 
     private void adjustParameters() {
         // Базовые параметры
         int availableProcessors = Runtime.getRuntime().availableProcessors();
+        PoolCalibration calibration = PoolCalibrator.getCalibration();
         
         // Настройка размера пула потоков
-        if (isLowMemoryDevice) {
+        if (calibration != null) {
+            // Замеренные при калибровке значения вместо правил по памяти и числу ядер
+            maxPoolSize = calibration.recommendedMaxPoolSize;
+            bufferSize = isLowMemoryDevice
+                    ? calibration.recommendedBufferSize / 2
+                    : calibration.recommendedBufferSize;
+        } else if (isLowMemoryDevice) {
             maxPoolSize = Math.min(2, availableProcessors);
             bufferSize = DEFAULT_BUFFER_SIZE / 2;
         } else if (memoryClass < 256) {
@@ -61,7 +81,7 @@ public class ResourceOptimizer {
         }
 
         // Дополнительные корректировки для старых устройств
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+        if (Platform.get().getApiLevel() < Build.VERSION_CODES.N) {
             maxPoolSize = Math.min(maxPoolSize, 2);
             bufferSize = Math.min(bufferSize, DEFAULT_BUFFER_SIZE);
         }
@@ -78,20 +98,162 @@ public class ResourceOptimizer {
         return new CoroutineContext.Builder()
                 .setDispatcher(isLowMemoryDevice ? Dispatchers.IO : Dispatchers.Virtual)
                 .setName("Optimized")
-                .setExceptionHandler(e -> Log.e(TAG, "Error in optimized context", e))
+                .setExceptionHandler(e -> PlatformLog.e(TAG, "Error in optimized context", e))
                 .build();
     }
 
+    // Канал регистрируется и сжимается вместе с остальными буферами при нехватке памяти
     public <T> CoroutineChannel<T> createOptimizedChannel() {
-        return CoroutineChannel.buffered(getOptimalBufferSize());
+        CoroutineChannel<T> channel = CoroutineChannel.buffered(bufferSize);
+        register(channel);
+        return channel;
     }
 
     public int getOptimalBufferSize() {
-        return bufferSize;
+        return scale(bufferSize);
     }
 
     public int getMaxPoolSize() {
-        return maxPoolSize;
+        return scale(maxPoolSize);
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    // Буфер оптимального размера для IO-задач, закрывается через try-with-resources или withResource
+    public BufferPool.PooledBuffer acquireBuffer() {
+        return bufferPool.acquire(getOptimalBufferSize());
+    }
+
+    public MemoryPressure getMemoryPressure() {
+        return memoryPressure;
+    }
+
+    // Пул уменьшается при нехватке памяти и возвращается к своему размеру, когда она проходит
+    public synchronized void register(ThreadPoolManager pool) {
+        if (pool != null) {
+            pools.add(new WeakReference<>(pool));
+            if (memoryPressure != MemoryPressure.NONE) {
+                pool.scalePoolSize(memoryPressure.sizeFactor);
+            }
+        }
+    }
+
+    public synchronized void register(CoroutineChannel<?> channel) {
+        if (channel != null) {
+            channels.add(new WeakReference<>(channel));
+            if (memoryPressure != MemoryPressure.NONE) {
+                resize(channel, memoryPressure);
+            }
+        }
+    }
+
+    // Для кэшей и прочих ресурсов приложения, NONE означает, что можно вернуть прежние размеры
+    public void addMemoryPressureListener(MemoryPressure.Listener listener) {
+        if (listener != null) {
+            pressureListeners.add(listener);
+        }
+    }
+
+    public void removeMemoryPressureListener(MemoryPressure.Listener listener) {
+        pressureListeners.remove(listener);
+    }
+
+    // Сигналы только повышают уровень, понижает его перепроверка
+    @Override
+    public synchronized void onMemoryPressure(MemoryPressure pressure) {
+        if (pressure.compareTo(memoryPressure) > 0) {
+            applyMemoryPressure(pressure);
+        }
+        if (memoryPressure != MemoryPressure.NONE) {
+            scheduleRecheck();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        Platform.get().unwatchMemoryPressure(pressureWatch);
+        if (pressureRecheck != null) {
+            pressureRecheck.cancel(false);
+            pressureRecheck = null;
+        }
+        bufferPool.trim();
+    }
+
+    private synchronized void recheckMemoryPressure() {
+        pressureRecheck = null;
+        MemoryPressure pressure = Platform.get().getMemoryPressure();
+        if (pressure != memoryPressure) {
+            applyMemoryPressure(pressure);
+        }
+        if (pressure != MemoryPressure.NONE) {
+            scheduleRecheck();
+        }
+    }
+
+    private void scheduleRecheck() {
+        if (pressureRecheck != null) {
+            pressureRecheck.cancel(false);
+        }
+        pressureRecheck = getRecheckTimer().schedule(
+                pressureWatch::recheck, PRESSURE_RECHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void applyMemoryPressure(MemoryPressure pressure) {
+        memoryPressure = pressure;
+        PlatformLog.i(TAG, "Memory pressure " + pressure + ", scaling pools and buffers to " + pressure.sizeFactor);
+
+        pools.removeIf(ref -> ref.get() == null);
+        for (WeakReference<ThreadPoolManager> ref : pools) {
+            ThreadPoolManager pool = ref.get();
+            if (pool != null) {
+                pool.scalePoolSize(pressure.sizeFactor);
+            }
+        }
+
+        channels.removeIf(ref -> ref.get() == null);
+        for (WeakReference<CoroutineChannel<?>> ref : channels) {
+            CoroutineChannel<?> channel = ref.get();
+            if (channel != null) {
+                resize(channel, pressure);
+            }
+        }
+
+        for (MemoryPressure.Listener listener : pressureListeners) {
+            try {
+                listener.onMemoryPressure(pressure);
+            } catch (RuntimeException e) {
+                PlatformLog.e(TAG, "Error in memory pressure listener", e);
+            }
+        }
+    }
+
+    // Безлимитные каналы не ограничиваются
+    private static void resize(CoroutineChannel<?> channel, MemoryPressure pressure) {
+        int initialCapacity = channel.getInitialCapacity();
+        if (initialCapacity != Integer.MAX_VALUE) {
+            channel.setCapacity(Math.max(1, (int) Math.round(initialCapacity * pressure.sizeFactor)));
+        }
+    }
+
+    private int scale(int size) {
+        return Math.max(1, (int) Math.round(size * memoryPressure.sizeFactor));
+    }
+
+    private static ScheduledExecutorService getRecheckTimer() {
+        if (recheckTimer == null) {
+            synchronized (ResourceOptimizer.class) {
+                if (recheckTimer == null) {
+                    recheckTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "MemoryPressureRecheck");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return recheckTimer;
     }
 
     public boolean isLowMemoryDevice() {
@@ -139,4 +301,33 @@ public class ResourceOptimizer {
             this.memoryClass = memoryClass;
         }
     }
+
+    // Платформа и таймер держат только слабую ссылку, чтобы незакрытый оптимизатор мог быть
+    // собран вместе со своим пулом буферов. После сборки подписка снимается при первом сигнале.
+    private static class PressureWatch implements MemoryPressure.Listener {
+        private final WeakReference<ResourceOptimizer> optimizerRef;
+
+        PressureWatch(ResourceOptimizer optimizer) {
+            this.optimizerRef = new WeakReference<>(optimizer);
+        }
+
+        @Override
+        public void onMemoryPressure(MemoryPressure pressure) {
+            ResourceOptimizer optimizer = optimizerRef.get();
+            if (optimizer != null) {
+                optimizer.onMemoryPressure(pressure);
+            } else {
+                Platform.get().unwatchMemoryPressure(this);
+            }
+        }
+
+        void recheck() {
+            ResourceOptimizer optimizer = optimizerRef.get();
+            if (optimizer != null) {
+                optimizer.recheckMemoryPressure();
+            } else {
+                Platform.get().unwatchMemoryPressure(this);
+            }
+        }
+    }
 } 
\ No newline at end of file
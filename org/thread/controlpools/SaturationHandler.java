@@ -0,0 +1,199 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the configured {@link SaturationPolicy} and counts how often each branch fires.
+ */
+class SaturationHandler implements RejectedExecutionHandler {
+    private final SaturationPolicy policy;
+    private final long blockTimeoutNanos;
+    private final ConcurrentLinkedDeque<Runnable> overflow = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder blockTimeouts = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder refilled = new LongAdder();
+
+    SaturationHandler(SaturationPolicy policy, long blockTimeout, TimeUnit unit) {
+        this.policy = policy != null ? policy : SaturationPolicy.ABORT;
+        this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            reject(r, "Executor is shut down");
+        }
+        // Only meant to start a worker, the pool got one while it was on its way
+        if (r == PausableThreadPoolExecutor.WAKE_UP) {
+            return;
+        }
+
+        // In eager mode the queue refused the task so a worker could be started, if the pool
+        // reached its max size in the meantime the task still belongs in the queue
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (queue instanceof PriorityTaskQueue && ((PriorityTaskQueue) queue).isEager()
+                && ((PriorityTaskQueue) queue).force(r)) {
+            return;
+        }
+
+        switch (policy) {
+            case CALLER_RUNS:
+                callerRuns.increment();
+                r.run();
+                break;
+            case BLOCK_WITH_TIMEOUT:
+                blockForSpace(r, executor);
+                ensureWorker(executor);
+                break;
+            case DROP_OLDEST:
+                // One eviction per rejected task. After the capacity was lowered below the queued
+                // count a retry through execute() would keep evicting and recursing.
+                dropOldest(executor.getQueue());
+                if (!offerToQueue(executor.getQueue(), r)) {
+                    reject(r, "Queue is still full after dropping the oldest task");
+                }
+                ensureWorker(executor);
+                break;
+            case SPILL_TO_OVERFLOW:
+                spilled.increment();
+                overflow.offerLast(r);
+                overflowSize.incrementAndGet();
+                // The queue may have drained since it refused the task, and the last worker's
+                // refill may already have run, so nothing else would move the task back
+                refill(executor);
+                ensureWorker(executor);
+                break;
+            case ABORT:
+            default:
+                reject(r, "Queue is full");
+        }
+    }
+
+    // The work-stealing backend has no queue to wait on, drop from or refill, so only
+    // CALLER_RUNS applies there and every other policy rejects
+    void onWorkStealingSaturated(Runnable r) {
+        if (policy == SaturationPolicy.CALLER_RUNS) {
+            callerRuns.increment();
+            r.run();
+        } else {
+            reject(r, "Work-stealing pool is saturated");
+        }
+    }
+
+    // Called by workers after each task, moves spilled tasks back while the queue has space
+    void refill(ThreadPoolExecutor executor) {
+        if (overflowSize.get() == 0) {
+            return;
+        }
+
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        Runnable task;
+        while ((task = overflow.pollFirst()) != null) {
+            if (!offerToQueue(queue, task)) {
+                overflow.offerFirst(task);
+                return;
+            }
+            overflowSize.decrementAndGet();
+            refilled.increment();
+        }
+    }
+
+    // Spilled tasks that never made it back into the queue are cancelled on termination
+    void cancelOverflow() {
+        Runnable task;
+        while ((task = overflow.pollFirst()) != null) {
+            overflowSize.decrementAndGet();
+            DroppableTask.drop(task);
+        }
+    }
+
+    SaturationStats getStats() {
+        return new SaturationStats(
+                policy,
+                aborted.sum(),
+                callerRuns.sum(),
+                blocked.sum(),
+                blockTimeouts.sum(),
+                droppedOldest.sum(),
+                spilled.sum(),
+                refilled.sum(),
+                overflowSize.get()
+        );
+    }
+
+    private void blockForSpace(Runnable r, ThreadPoolExecutor executor) {
+        blocked.increment();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        try {
+            if (!queue.offer(r, blockTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                blockTimeouts.increment();
+                reject(r, "Timed out waiting for queue space");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(r, "Interrupted while waiting for queue space");
+        }
+
+        if (executor.isShutdown() && queue.remove(r)) {
+            reject(r, "Executor is shut down");
+        }
+    }
+
+    // Same re-check as ThreadPoolExecutor.execute() does after queueing: with scale-to-zero all
+    // workers may have exited while the task was on its way into the queue
+    private static void ensureWorker(ThreadPoolExecutor executor) {
+        if (executor.getPoolSize() > 0 || executor.isShutdown() || executor.getQueue().isEmpty()) {
+            return;
+        }
+        if (!executor.prestartCoreThread()) {
+            // Without core threads only execute() starts a worker, the task has room to go back
+            Runnable task = executor.getQueue().poll();
+            if (task != null) {
+                resubmit(executor, task);
+            }
+        }
+    }
+
+    private static void resubmit(ThreadPoolExecutor executor, Runnable task) {
+        if (executor instanceof PausableThreadPoolExecutor) {
+            ((PausableThreadPoolExecutor) executor).resubmit(task);
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private static boolean offerToQueue(BlockingQueue<Runnable> queue, Runnable task) {
+        if (queue instanceof PriorityTaskQueue) {
+            return ((PriorityTaskQueue) queue).force(task);
+        }
+        return queue.offer(task);
+    }
+
+    private void dropOldest(BlockingQueue<Runnable> queue) {
+        Runnable dropped = queue instanceof PriorityTaskQueue
+                ? ((PriorityTaskQueue) queue).pollEvictable()
+                : queue.poll();
+        if (dropped != null) {
+            droppedOldest.increment();
+            DroppableTask.drop(dropped);
+        }
+    }
+
+    private void reject(Runnable r, String reason) {
+        aborted.increment();
+        throw new RejectedExecutionException(reason + ", task " + r + " rejected");
+    }
+}
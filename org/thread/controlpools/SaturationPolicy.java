@@ -0,0 +1,17 @@
+package org.thread.controlpools;
+
+/**
+ * What {@link ThreadPoolManager} does with a task when all workers are busy and the queue is full.
+ */
+public enum SaturationPolicy {
+    // Reject the task, execute() returns null
+    ABORT,
+    // Run the task on the submitting thread
+    CALLER_RUNS,
+    // Wait up to the configured timeout for queue space, then reject
+    BLOCK_WITH_TIMEOUT,
+    // Drop the oldest task of the lowest queued priority and retry the submission
+    DROP_OLDEST,
+    // Park the task in an unbounded overflow buffer that refills the queue as workers free up
+    SPILL_TO_OVERFLOW
+}
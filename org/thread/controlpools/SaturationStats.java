@@ -0,0 +1,42 @@
+package org.thread.controlpools;
+
+public class SaturationStats {
+    public final SaturationPolicy policy;
+    public final long aborted;
+    public final long callerRuns;
+    public final long blocked;
+    public final long blockTimeouts;
+    public final long droppedOldest;
+    public final long spilled;
+    public final long refilled;
+    public final int overflowSize;
+
+    SaturationStats(
+        SaturationPolicy policy,
+        long aborted,
+        long callerRuns,
+        long blocked,
+        long blockTimeouts,
+        long droppedOldest,
+        long spilled,
+        long refilled,
+        int overflowSize
+    ) {
+        this.policy = policy;
+        this.aborted = aborted;
+        this.callerRuns = callerRuns;
+        this.blocked = blocked;
+        this.blockTimeouts = blockTimeouts;
+        this.droppedOldest = droppedOldest;
+        this.spilled = spilled;
+        this.refilled = refilled;
+        this.overflowSize = overflowSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SaturationStats{policy=%s, aborted=%d, callerRuns=%d, blocked=%d, blockTimeouts=%d, " +
+                        "droppedOldest=%d, spilled=%d, refilled=%d, overflowSize=%d}",
+                policy, aborted, callerRuns, blocked, blockTimeouts, droppedOldest, spilled, refilled, overflowSize);
+    }
+}
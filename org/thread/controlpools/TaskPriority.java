@@ -0,0 +1,11 @@
+package org.thread.controlpools;
+
+/**
+ * Queue-level ordering of tasks submitted to {@link ThreadPoolManager}.
+ * Higher priorities are dequeued first, waiting tasks age towards higher lanes.
+ */
+public enum TaskPriority {
+    LOW,
+    NORMAL,
+    HIGH
+}
@@ -1,10 +1,6 @@
 package org.thread.controlpools;
 
-import android.app.ActivityManager;
 import android.content.Context;
-import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
@@ -21,7 +17,7 @@ public class ThreadDispatchers {
     public static final Executor IO = new ControlledCachedThreadPool();
 
     // Main thread dispatcher
-    public static final Executor MAIN = new HandlerExecutor(Looper.getMainLooper());
+    public static final Executor MAIN = Platform.get().getMainThreadExecutor();
 
     // Default dispatcher (CPU-bound tasks)
     public static synchronized ExecutorService DEFAULT(Context context) {
@@ -54,35 +50,22 @@ public class ThreadDispatchers {
 
     // Calculate optimal pool size based on device capabilities
     private static int calculateOptimalPoolSize(Context context) {
-        if (context == null || isWeakDevice(context)) {
+        PoolCalibration calibration = PoolCalibrator.getCalibration();
+        if (calibration != null) {
+            return Math.max(MIN_POOL_SIZE, calibration.recommendedMaxPoolSize);
+        }
+        if (isWeakDevice(context)) {
             return MIN_POOL_SIZE;
         }
         int availableProcessors = Runtime.getRuntime().availableProcessors();
         return Math.max(MIN_POOL_SIZE, Math.min(MAX_POOL_SIZE, availableProcessors));
     }
 
+    // Without a context the profile is only there once the app has called AndroidPlatform.init()
     public static boolean isWeakDevice(Context context) {
-        if (context == null) return true;
-
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            return true;
-        }
-
-        int availableProcessors = Runtime.getRuntime().availableProcessors();
-        if (availableProcessors <= 2) {
-            return true;
-        }
-
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager == null) {
-            return true;
-        }
-
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        activityManager.getMemoryInfo(memoryInfo);
-
-        long TWO_GB_IN_BYTES = 2L * 1024 * 1024 * 1024;
-        return memoryInfo.totalMem <= TWO_GB_IN_BYTES || memoryInfo.lowMemory;
+        AndroidPlatform.init(context);
+        DeviceProfile profile = DeviceProfile.get();
+        return profile == null || profile.isWeakDevice();
     }
 
     public static class CancellableTask implements Runnable, Cancellable {
@@ -227,22 +210,6 @@ public class ThreadDispatchers {
         }
     }
 
-    private static class HandlerExecutor implements Executor {
-        private final Handler handler;
-
-        HandlerExecutor(Looper looper) {
-            this.handler = new Handler(looper);
-        }
-
-        @Override
-        public void execute(Runnable command) {
-            if (command == null) {
-                throw new IllegalArgumentException("Runnable cannot be null");
-            }
-            handler.post(command);
-        }
-    }
-
     public static CancellableTask Default(Object scope, Runnable task) {
         CancellableTask cancellableTask = new CancellableTask(task);
         trackTask(scope, cancellableTask);
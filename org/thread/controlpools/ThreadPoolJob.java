@@ -1,7 +1,5 @@
 package org.thread.controlpools;
 
-import android.os.Build;
-
 import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.*;
@@ -9,6 +7,7 @@ import java.util.function.Consumer;
 
 public class ThreadPoolJob {
     private final Future<?> future;
+    private final Executor childExecutor;
     private volatile Consumer<ThreadPoolJob> completionListener;
     private volatile Consumer<Throwable> exceptionHandler;
 
@@ -17,7 +16,18 @@ public class ThreadPoolJob {
     private volatile boolean isCancelling;
 
     public ThreadPoolJob(Future<?> future) {
+        this(future, ForkJoinPool.commonPool());
+    }
+
+    ThreadPoolJob(Future<?> future, Executor childExecutor) {
         this.future = future;
+        this.childExecutor = childExecutor;
+    }
+
+    // For subclasses that are their own future
+    ThreadPoolJob(Executor childExecutor) {
+        this.future = (Future<?>) this;
+        this.childExecutor = childExecutor;
     }
 
     public ThreadPoolJob launchChild(Runnable task) {
@@ -25,13 +35,15 @@ public class ThreadPoolJob {
     }
 
     public ThreadPoolJob launchChild(Runnable task, Consumer<Throwable> exceptionHandler) {
-        if (isCancelling || future.isDone()) {
+        if (isCancelling || isFutureDone()) {
             throw new IllegalStateException("Cannot launch child on completed/cancelled job");
         }
 
         ThreadPoolJob child = null;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            child = new ThreadPoolJob(CompletableFuture.runAsync(task, ForkJoinPool.commonPool()));
+        CompletableFuture<Void> childFuture = null;
+        if (Platform.get().getApiLevel() >= Platform.API_NOUGAT) {
+            childFuture = CompletableFuture.runAsync(task, childExecutor);
+            child = new ThreadPoolJob(childFuture, childExecutor);
         }
         child.parentRef = new WeakReference<>(this);
         child.onException(exceptionHandler != null ? exceptionHandler : this.exceptionHandler);
@@ -45,6 +57,14 @@ public class ThreadPoolJob {
                 children.remove(j);
             }
         });
+        // The future does not call back into the job, without this the child would never leave
+        // the parent and the parent would never be done
+        final ThreadPoolJob finishedChild = child;
+        childFuture.whenComplete((result, error) -> {
+            if (!finishedChild.isCancelled()) {
+                finishedChild.notifyCompletion();
+            }
+        });
 
         return child;
     }
@@ -85,19 +105,22 @@ public class ThreadPoolJob {
         }
 
         boolean cancelled = future.cancel(true);
-        if (cancelled && completionListener != null) {
-            completionListener.accept(this);
+        // A JobTask notifies its listeners itself when it is cancelled
+        if (cancelled && !(this instanceof JobTask)) {
+            notifyCompletion();
         }
 
         return cancelled;
     }
 
+    // Also false while children are still running
     public boolean isDone() {
-        if (!future.isDone()) return false;
+        return isFutureDone() && !hasActiveChildren();
+    }
 
-        synchronized (this) {
-            return children.isEmpty();
-        }
+    // The job's own task only, without its children
+    boolean isFutureDone() {
+        return future.isDone();
     }
 
     public void await() throws InterruptedException, ExecutionException {
@@ -158,7 +181,7 @@ public class ThreadPoolJob {
     }
 
     public boolean isRunning() {
-        return !future.isDone() && !future.isCancelled();
+        return !isFutureDone() && !future.isCancelled();
     }
 
     public void waitForCompletion() throws InterruptedException, ExecutionException {
@@ -177,6 +200,26 @@ public class ThreadPoolJob {
         }
     }
 
+    boolean hasActiveChildren() {
+        synchronized (this) {
+            return !children.isEmpty();
+        }
+    }
+
+    void notifyCompletion() {
+        Consumer<ThreadPoolJob> listener = completionListener;
+        if (listener != null) {
+            listener.accept(this);
+        }
+    }
+
+    void notifyException(Throwable e) {
+        Consumer<Throwable> handler = exceptionHandler;
+        if (handler != null) {
+            handler.accept(e);
+        }
+    }
+
     private void awaitChildrenCompletion() throws InterruptedException, ExecutionException {
         synchronized (this) {
             List<ThreadPoolJob> childrenCopy = new ArrayList<>(children);
@@ -196,4 +239,13 @@ public class ThreadPoolJob {
     private void onExceptionInternal(Consumer<Throwable> exceptionHandler) {
         this.exceptionHandler = exceptionHandler;
     }
+
+    // Outcome of a job whose deadline passed before a worker picked it up
+    public static class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
 }
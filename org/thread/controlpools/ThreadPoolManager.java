@@ -1,14 +1,5 @@
 package org.thread.controlpools;
 
-import android.annotation.TargetApi;
-import android.app.ActivityManager;
-import android.content.Context;
-import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.PowerManager;
-import android.util.Log;
-
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -16,6 +7,7 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class ThreadPoolManager {
     private static final String TAG = "ThreadPoolManager";
@@ -23,31 +15,143 @@ public class ThreadPoolManager {
     private static final int DEFAULT_MAX_POOL_SIZE = 4;
     private static final long DEFAULT_KEEP_ALIVE_TIME = 30L;
     private static final int DEFAULT_QUEUE_CAPACITY = 10;
+    private static final long DEFAULT_PRIORITY_AGING_MILLIS = 500L;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000L;
 
-    private PausableThreadPoolExecutor pausableExecutor;
+    private PausableExecutor pausableExecutor;
     private final ReentrantLock pauseLock = new ReentrantLock();
     private final AtomicBoolean isPaused = new AtomicBoolean(false);
     private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
     private final List<WeakReference<ThreadPoolStateListener>> stateListeners = new ArrayList<>();
-    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Only backs the static delay(), per-manager timers live in PoolScheduler
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ThreadPoolManagerDelay");
+        thread.setDaemon(true);
+        return thread;
+    });
     private int corePoolSize;
     private int maxPoolSize;
     private int queueCapacity;
+    // Core size in effect before scalePoolSize() shrank the pool, -1 while unscaled
+    private int unscaledCorePoolSize = -1;
+    private final Backend backend;
+    private final long priorityAgingMillis;
+    private final SaturationHandler saturationHandler;
+    private final long adaptiveTargetWaitMillis;
+    private final boolean eagerSpawning;
+    private final long controlledDelayTargetMillis;
+    private final long controlledDelayIntervalMillis;
+    private final boolean idleScaleToZero;
+    private AdaptivePoolController adaptiveController;
+    private IdleScalingController idleScalingController;
+    private final KeyedSerialExecutor serialExecutor;
+    private final PoolScheduler poolScheduler;
+
+    public enum Backend {
+        // Shared bounded FIFO queue, workers grow from core to max size
+        THREAD_POOL,
+        // Per-worker deques with stealing, suited for fan-out workloads
+        WORK_STEALING,
+        // Shared lock-free ring, FIFO only: no priorities, tags or queue-side pausing
+        RING_BUFFER
+    }
 
-    public ThreadPoolManager(Context context) {
-        initDefaultPool(context);
+    // Sized for this device, on Android call AndroidPlatform.init() first
+    public ThreadPoolManager() {
+        this(new Builder().setSizedForDevice(true));
     }
 
     public ThreadPoolManager(int corePoolSize, int maxPoolSize, long keepAliveTime, int queueCapacity) {
-        initCustomPool(corePoolSize, maxPoolSize, keepAliveTime, queueCapacity);
+        this(new Builder()
+                .setCorePoolSize(corePoolSize)
+                .setMaxPoolSize(maxPoolSize)
+                .setKeepAliveTime(keepAliveTime)
+                .setQueueCapacity(queueCapacity));
+    }
+
+    private ThreadPoolManager(Builder builder) {
+        this.backend = builder.backend;
+        this.priorityAgingMillis = builder.priorityAgingMillis;
+        this.saturationHandler = new SaturationHandler(
+                builder.saturationPolicy, builder.blockTimeoutMillis, TimeUnit.MILLISECONDS);
+        this.adaptiveTargetWaitMillis = builder.adaptiveTargetWaitMillis;
+        this.eagerSpawning = builder.eagerSpawning;
+        this.controlledDelayTargetMillis = builder.controlledDelayTargetMillis;
+        this.controlledDelayIntervalMillis = builder.controlledDelayIntervalMillis;
+        this.idleScaleToZero = builder.idleScaleToZero;
+        if (builder.sizedForDevice) {
+            initDefaultPool();
+        } else {
+            initCustomPool(builder.corePoolSize, builder.maxPoolSize, builder.keepAliveTime, builder.queueCapacity);
+        }
+        this.serialExecutor = new KeyedSerialExecutor(pausableExecutor);
+        this.poolScheduler = new PoolScheduler(pausableExecutor, isPaused::get);
     }
 
     public ExecutorService getExecutorService() {
         return pausableExecutor;
     }
 
+    int getLoad() {
+        return pausableExecutor.getLoad();
+    }
+
+    // Scales the thread limits relative to the configured ones, 1.0 restores them. Idle threads
+    // above the new limits exit right away, busy ones after their task. The core size scales
+    // from the one in effect before the first shrink, so the adaptive controller's sizing is
+    // restored as well. The work-stealing backend cannot be resized.
+    synchronized void scalePoolSize(double factor) {
+        if (!(pausableExecutor instanceof PausableThreadPoolExecutor) || pausableExecutor.isShutdown()) {
+            return;
+        }
+
+        PausableThreadPoolExecutor executor = (PausableThreadPoolExecutor) pausableExecutor;
+        if (unscaledCorePoolSize < 0) {
+            unscaledCorePoolSize = executor.getCorePoolSize();
+        }
+        int baseCore = unscaledCorePoolSize;
+        if (factor >= 1.0) {
+            unscaledCorePoolSize = -1;
+        }
+
+        int max = Math.max(1, (int) Math.round(maxPoolSize * factor));
+        int core = Math.min(max, Math.max(1, (int) Math.round(baseCore * factor)));
+        // The core size may never exceed the max size, not even in between
+        if (max < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(core);
+            executor.setMaximumPoolSize(max);
+        } else {
+            executor.setMaximumPoolSize(max);
+            executor.setCorePoolSize(core);
+        }
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public ThreadPoolMetrics.Snapshot getMetrics() {
+        return pausableExecutor.getMetricsSnapshot();
+    }
+
+    // Counters of the saturation policy, the work-stealing backend always aborts
+    public SaturationStats getSaturationStats() {
+        return saturationHandler.getStats();
+    }
+
+    // Cancelled jobs release their queue slot as soon as they are cancelled, this only compacts
+    // the leftover entries. A full scan is only needed for queues that are not cancellation-aware.
     public void removeCompletedTasks() {
-        Iterator<Runnable> iterator = pausableExecutor.getQueue().iterator();
+        if (!(pausableExecutor instanceof PausableThreadPoolExecutor)) {
+            return;
+        }
+
+        BlockingQueue<Runnable> queue = ((PausableThreadPoolExecutor) pausableExecutor).getQueue();
+        if (queue instanceof PriorityTaskQueue) {
+            ((PriorityTaskQueue) queue).purgeTombstones();
+            return;
+        }
+        Iterator<Runnable> iterator = queue.iterator();
         while (iterator.hasNext()) {
             Runnable task = iterator.next();
             if (task instanceof Future && ((Future<?>) task).isDone()) {
@@ -56,203 +160,465 @@ public class ThreadPoolManager {
         }
     }
 
-    private void initDefaultPool(Context context) {
+    private void initDefaultPool() {
         int availableProcessors = Runtime.getRuntime().availableProcessors();
         corePoolSize = Math.max(DEFAULT_CORE_POOL_SIZE, availableProcessors / 2);
         maxPoolSize = Math.max(DEFAULT_MAX_POOL_SIZE, availableProcessors);
         queueCapacity = DEFAULT_QUEUE_CAPACITY;
 
-        if (isWeakDevice(context)) {
+        // A calibration replaces the hardware rules, battery saver and memory pressure still apply
+        DeviceProfile profile = DeviceProfile.get();
+        PoolCalibration calibration = PoolCalibrator.getCalibration();
+        if (calibration != null) {
+            maxPoolSize = calibration.recommendedMaxPoolSize;
+            corePoolSize = Math.max(DEFAULT_CORE_POOL_SIZE, maxPoolSize / 2);
+        }
+
+        if (profile == null) {
+            // Nothing measured, e.g. on Android without AndroidPlatform.init(), so stay small
+            PlatformLog.w(TAG, "Device profile unavailable, sizing the pool for a weak device");
+        }
+        if (profile == null
+                || (calibration != null ? profile.powerSaveMode || profile.lowMemory : profile.isWeakDevice())) {
             corePoolSize = 1;
             maxPoolSize = 2;
-            Log.i(TAG, "Weak device detected, reducing pool size.");
+            PlatformLog.i(TAG, "Weak device detected, reducing pool size.");
         }
 
         initCustomPool(corePoolSize, maxPoolSize, DEFAULT_KEEP_ALIVE_TIME, queueCapacity);
     }
 
     private void initCustomPool(int corePoolSize, int maxPoolSize, long keepAliveTime, int queueCapacity) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+        if (Platform.get().getApiLevel() < Platform.API_LOLLIPOP) {
             maxPoolSize = Math.min(maxPoolSize, 2);
             keepAliveTime = 60L;
         }
 
+        this.corePoolSize = corePoolSize;
+        this.maxPoolSize = maxPoolSize;
         this.queueCapacity = queueCapacity;
-        BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<>(queueCapacity);
+
+        if (backend == Backend.WORK_STEALING) {
+            this.pausableExecutor = new PausableForkJoinExecutor(
+                    maxPoolSize, queueCapacity, Thread.NORM_PRIORITY, saturationHandler);
+            return;
+        }
+
         ThreadFactory threadFactory = new PriorityThreadFactory(Thread.NORM_PRIORITY);
 
+        if (backend == Backend.RING_BUFFER) {
+            this.pausableExecutor = new PausableThreadPoolExecutor(
+                    corePoolSize,
+                    maxPoolSize,
+                    keepAliveTime,
+                    TimeUnit.SECONDS,
+                    new MpmcRingBufferQueue(queueCapacity),
+                    threadFactory,
+                    saturationHandler);
+            startIdleScaling(keepAliveTime);
+            return;
+        }
+
+        PriorityTaskQueue workQueue = new PriorityTaskQueue(queueCapacity, priorityAgingMillis, TimeUnit.MILLISECONDS);
+
         this.pausableExecutor = new PausableThreadPoolExecutor(
                 corePoolSize,
                 maxPoolSize,
                 keepAliveTime,
                 TimeUnit.SECONDS,
                 workQueue,
-                threadFactory);
-    }
-
-    private boolean isWeakDevice(Context context) {
-        int availableProcessors = Runtime.getRuntime().availableProcessors();
-
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        activityManager.getMemoryInfo(memoryInfo);
-
-        long totalMemory = memoryInfo.totalMem;
-
-        long FOUR_GB_IN_BYTES = 4L * 1024 * 1024 * 1024;
-        long NINE_GB_IN_BYTES = 9L * 1024 * 1024 * 1024;
-        long SIXTEEN_GB_IN_BYTES = 16L * 1024 * 1024 * 1024;
-
-        boolean isLowMemoryDevice = totalMemory <= FOUR_GB_IN_BYTES;
-        boolean isMediumMemoryDevice = totalMemory > FOUR_GB_IN_BYTES && totalMemory <= NINE_GB_IN_BYTES;
-        boolean isHighMemoryDevice = totalMemory > NINE_GB_IN_BYTES && totalMemory <= SIXTEEN_GB_IN_BYTES;
-        boolean isVeryHighMemoryDevice = totalMemory > SIXTEEN_GB_IN_BYTES;
+                threadFactory,
+                saturationHandler);
 
-        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        boolean isBatterySaverOn = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP &&
-                powerManager.isPowerSaveMode();
-
-        boolean isInLowPerformanceMode = isBatterySaverOn || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP;
-
-        String cpuArch = Build.SUPPORTED_ABIS[0];
-        boolean isOldCpuArchitecture = cpuArch.contains("armv7") || cpuArch.contains("x86");
-
-        boolean isOldOS = Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP;
-
-        if (isOldOS || availableProcessors <= 2 || isLowMemoryDevice || isOldCpuArchitecture || isInLowPerformanceMode) {
-            return true;
+        if (eagerSpawning) {
+            workQueue.setEagerExecutor((PausableThreadPoolExecutor) pausableExecutor);
         }
 
-        if (isVeryHighMemoryDevice) {
-            return false;
+        if (controlledDelayTargetMillis > 0) {
+            workQueue.setControlledDelay(new ControlledDelay(
+                    controlledDelayTargetMillis,
+                    controlledDelayIntervalMillis,
+                    TimeUnit.MILLISECONDS,
+                    ((PausableThreadPoolExecutor) pausableExecutor).getMetrics()));
         }
 
-        if (isMediumMemoryDevice || isHighMemoryDevice) {
-            return false;
+        if (adaptiveTargetWaitMillis > 0) {
+            PausableThreadPoolExecutor executor = (PausableThreadPoolExecutor) pausableExecutor;
+            adaptiveController = new AdaptivePoolController(
+                    executor, workQueue, adaptiveTargetWaitMillis, TimeUnit.MILLISECONDS);
+            adaptiveController.start();
         }
 
-        return false;
+        startIdleScaling(keepAliveTime);
     }
 
+    private void startIdleScaling(long keepAliveTime) {
+        if (!idleScaleToZero) {
+            return;
+        }
+        if (keepAliveTime <= 0L) {
+            PlatformLog.w(TAG, "Idle scale-to-zero needs a positive keep-alive time, core threads stay alive");
+            return;
+        }
 
+        PausableThreadPoolExecutor executor = (PausableThreadPoolExecutor) pausableExecutor;
+        executor.allowCoreThreadTimeOut(true);
+        idleScalingController = new IdleScalingController(executor);
+        executor.setIdleScaling(idleScalingController);
+        idleScalingController.start();
+    }
 
+    public ThreadPoolJob execute(Runnable task) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
 
+        try {
+            if (isShuttingDown.get()) {
+                PlatformLog.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
+                return null;
+            }
 
+            return executeInternal(new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()));
 
+        } catch (RejectedExecutionException e) {
+            PlatformLog.e(TAG, "Task submission rejected: " + e.getMessage());
+        } catch (Exception e) {
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage(), e);
+        }
 
+        return null;
+    }
 
 
-    public ThreadPoolJob execute(Runnable task) {
+    public <T> ThreadPoolJob execute(Callable<T> task) {
         if (task == null) {
-            Log.e(TAG, "Null task submitted");
+            PlatformLog.e(TAG, "Null task submitted");
             return null;
         }
 
         try {
             if (isShuttingDown.get()) {
-                Log.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
+                PlatformLog.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
                 return null;
             }
 
-            Runnable weakTask = new WeakRunnable(task);
-            return executeInternal(weakTask);
+            return executeInternal(new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()));
 
         } catch (RejectedExecutionException e) {
-            Log.e(TAG, "Task submission rejected: " + e.getMessage());
+            PlatformLog.e(TAG, "Task submission rejected: " + e.getMessage());
         } catch (Exception e) {
-            Log.e(TAG, "Error submitting task: " + e.getMessage(), e);
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage(), e);
         }
 
         return null;
     }
 
 
-    public <T> ThreadPoolJob execute(Callable<T> task) {
+    public ThreadPoolJob execute(Runnable task, TaskPriority priority) {
         if (task == null) {
-            Log.e(TAG, "Null task submitted");
+            PlatformLog.e(TAG, "Null task submitted");
             return null;
         }
 
         try {
             if (isShuttingDown.get()) {
-                Log.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
+                PlatformLog.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
                 return null;
             }
 
-            Callable<T> weakTask = new WeakCallable<>(task);
-            return executeInternal(weakTask);
+            return executeInternal(new JobTask<>(task, priority, getChildExecutor()));
 
         } catch (RejectedExecutionException e) {
-            Log.e(TAG, "Task submission rejected: " + e.getMessage());
+            PlatformLog.e(TAG, "Task submission rejected: " + e.getMessage());
         } catch (Exception e) {
-            Log.e(TAG, "Error submitting task: " + e.getMessage(), e);
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage(), e);
         }
 
         return null;
     }
 
+    public <T> ThreadPoolJob execute(Callable<T> task, TaskPriority priority) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
 
-    private <T> ThreadPoolJob executeInternal(Callable<T> task) {
         try {
             if (isShuttingDown.get()) {
-                Log.e(TAG, "Thread pool is shutting down, task cannot be submitted.");
+                PlatformLog.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
                 return null;
             }
-            Future<T> future = pausableExecutor.submit(task);
-            return new ThreadPoolJob(future);
+
+            return executeInternal(new JobTask<>(task, priority, getChildExecutor()));
+
         } catch (RejectedExecutionException e) {
-            Log.e(TAG, "Task rejected: " + e.getMessage());
+            PlatformLog.e(TAG, "Task submission rejected: " + e.getMessage());
+        } catch (Exception e) {
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    // Tagged tasks can be held separately with pause(tag), e.g. prefetching while critical work keeps flowing
+    public ThreadPoolJob execute(Runnable task, String tag) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
+
+        JobTask<Void> job = new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor());
+        job.setTag(tag);
+        return executeInternal(job);
+    }
+
+    public <T> ThreadPoolJob execute(Callable<T> task, String tag) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
+
+        JobTask<T> job = new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor());
+        job.setTag(tag);
+        return executeInternal(job);
+    }
+
+    // The task is dropped without running if no worker picked it up within the timeout,
+    // the job then fails with a DeadlineExceededException
+    public ThreadPoolJob execute(Runnable task, long timeout, TimeUnit unit) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
+
+        JobTask<Void> job = new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor());
+        job.setDeadline(System.nanoTime() + unit.toNanos(timeout));
+        return executeInternal(job);
+    }
+
+    public <T> ThreadPoolJob execute(Callable<T> task, long timeout, TimeUnit unit) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
             return null;
+        }
+
+        JobTask<T> job = new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor());
+        job.setDeadline(System.nanoTime() + unit.toNanos(timeout));
+        return executeInternal(job);
+    }
+
+    // Tasks with the same key run one at a time in submission order, different keys run in parallel
+    public ThreadPoolJob executeSerial(Object key, Runnable task) {
+        if (key == null || task == null) {
+            PlatformLog.e(TAG, "Null key or task submitted");
+            return null;
+        }
+        return executeSerialInternal(key, new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()));
+    }
+
+    public <T> ThreadPoolJob executeSerial(Object key, Callable<T> task) {
+        if (key == null || task == null) {
+            PlatformLog.e(TAG, "Null key or task submitted");
+            return null;
+        }
+        return executeSerialInternal(key, new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()));
+    }
+
+    private ThreadPoolJob executeSerialInternal(Object key, JobTask<?> task) {
+        if (isShuttingDown.get()) {
+            PlatformLog.e(TAG, "Thread pool is shutting down, task submission is not allowed.");
+            return null;
+        }
+
+        try {
+            serialExecutor.execute(key, task);
+            return task;
         } catch (Exception e) {
-            Log.e(TAG, "Error submitting task: " + e.getMessage());
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage(), e);
             return null;
         }
     }
 
-    private ThreadPoolJob executeInternal(Runnable task) {
+    // Runs the task on this pool once the delay has elapsed, a pause holds it in the pool's queue
+    public ThreadPoolJob schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
+        return scheduleInternal(new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()), delay, unit);
+    }
+
+    public <T> ThreadPoolJob schedule(Callable<T> task, long delay, TimeUnit unit) {
+        if (task == null) {
+            PlatformLog.e(TAG, "Null task submitted");
+            return null;
+        }
+        return scheduleInternal(new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()), delay, unit);
+    }
+
+    private ThreadPoolJob scheduleInternal(JobTask<?> task, long delay, TimeUnit unit) {
+        if (isShuttingDown.get()) {
+            PlatformLog.e(TAG, "Thread pool is shutting down, task cannot be scheduled.");
+            return null;
+        }
+
+        try {
+            poolScheduler.schedule(task, delay, unit);
+            return task;
+        } catch (RejectedExecutionException e) {
+            PlatformLog.e(TAG, "Task rejected: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Ticks are skipped while the previous run is still pending and collapse into one run across a pause.
+    // The returned job only completes by being cancelled.
+    public ThreadPoolJob scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (task == null || period <= 0L) {
+            PlatformLog.e(TAG, "Null task or non-positive period");
+            return null;
+        }
+        if (isShuttingDown.get()) {
+            PlatformLog.e(TAG, "Thread pool is shutting down, task cannot be scheduled.");
+            return null;
+        }
+
+        try {
+            return new ThreadPoolJob(poolScheduler.scheduleAtFixedRate(task, initialDelay, period, unit),
+                    getChildExecutor());
+        } catch (RejectedExecutionException e) {
+            PlatformLog.e(TAG, "Task rejected: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The delay is measured from the end of one run to the start of the next
+    public ThreadPoolJob scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (task == null || delay <= 0L) {
+            PlatformLog.e(TAG, "Null task or non-positive delay");
+            return null;
+        }
+        if (isShuttingDown.get()) {
+            PlatformLog.e(TAG, "Thread pool is shutting down, task cannot be scheduled.");
+            return null;
+        }
+
+        try {
+            return new ThreadPoolJob(poolScheduler.scheduleWithFixedDelay(task, initialDelay, delay, unit),
+                    getChildExecutor());
+        } catch (RejectedExecutionException e) {
+            PlatformLog.e(TAG, "Task rejected: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Fire-and-forget: no future and no job handle, nothing is allocated besides the task itself.
+    // Exceptions thrown by the task go to the worker's uncaught exception handler.
+    public boolean executeNoHandle(Runnable task) {
+        if (task == null || isShuttingDown.get()) {
+            return false;
+        }
+
+        try {
+            pausableExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            PlatformLog.e(TAG, "Task rejected: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Only the thread-pool backend has priority lanes, elsewhere the priority is ignored
+    private ThreadPoolJob executeInternal(JobTask<?> task) {
         try {
             if (isShuttingDown.get()) {
-                Log.e(TAG, "Thread pool is shutting down, task cannot be submitted.");
+                PlatformLog.e(TAG, "Thread pool is shutting down, task cannot be submitted.");
                 return null;
             }
-            Future<?> future = pausableExecutor.submit(task);
-            return new ThreadPoolJob(future);
+            pausableExecutor.execute(task);
+            return task;
         } catch (RejectedExecutionException e) {
-            Log.e(TAG, "Task rejected: " + e.getMessage());
+            PlatformLog.e(TAG, "Task rejected: " + e.getMessage());
             return null;
         } catch (Exception e) {
-            Log.e(TAG, "Error submitting task: " + e.getMessage());
+            PlatformLog.e(TAG, "Error submitting task: " + e.getMessage());
             return null;
         }
     }
 
-    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private Executor getChildExecutor() {
+        // Children of jobs on the work-stealing backend are forked into the same pool
+        return backend == Backend.WORK_STEALING ? pausableExecutor : ForkJoinPool.commonPool();
+    }
+
+    // Returns the jobs of the tasks the pool accepted, in submission order
     public <T> List<ThreadPoolJob> executeTasks(List<Callable<T>> tasks) {
-        List<ThreadPoolJob> jobs = new ArrayList<>();
+        List<JobTask<T>> jobs = createJobs(tasks);
+        int accepted = submitAll(jobs);
+        return new ArrayList<ThreadPoolJob>(jobs.subList(0, accepted));
+    }
+
+    // Queues the whole batch under one queue lock. Tasks the pool rejects are cancelled, so the
+    // batch still completes.
+    public <T> BatchJob executeBatch(List<Callable<T>> tasks) {
+        List<JobTask<T>> jobs = createJobs(tasks);
+        BatchJob batch = new BatchJob(jobs);
+        submitAll(jobs);
+        return batch;
+    }
+
+    // Same submission as executeBatch, results are handed out in the order the tasks finish
+    public <T> CompletionStream<T> executeInCompletionOrder(List<Callable<T>> tasks) {
+        List<JobTask<T>> jobs = createJobs(tasks);
+        CompletionStream<T> stream = new CompletionStream<>(jobs);
+        submitAll(jobs);
+        return stream;
+    }
+
+    // Callback variant, the sink runs on the thread that finished each task and should not block
+    public <T> BatchJob executeInCompletionOrder(List<Callable<T>> tasks, Consumer<Future<T>> sink) {
+        List<JobTask<T>> jobs = createJobs(tasks);
+        @SuppressWarnings("unchecked")
+        BatchJob batch = new BatchJob(jobs, task -> sink.accept((Future<T>) task));
+        submitAll(jobs);
+        return batch;
+    }
+
+    private <T> List<JobTask<T>> createJobs(List<Callable<T>> tasks) {
+        List<JobTask<T>> jobs = new ArrayList<>();
         if (tasks == null) {
             return jobs;
         }
 
-        try {
-            if (isShuttingDown.get()) {
-                Log.e(TAG, "Thread pool is shutting down, tasks cannot be submitted.");
-                return jobs;
+        for (Callable<T> task : tasks) {
+            if (task != null) {
+                jobs.add(new JobTask<>(task, TaskPriority.NORMAL, getChildExecutor()));
             }
+        }
+        return jobs;
+    }
 
-            for (Callable<T> task : tasks) {
-                if (task != null) {
-                    Callable<T> weakTask = new WeakCallable<>(task);
-                    Future<T> future = pausableExecutor.submit(weakTask);
-                    jobs.add(new ThreadPoolJob(future));
-                }
+    private int submitAll(List<? extends JobTask<?>> jobs) {
+        int accepted = 0;
+        if (isShuttingDown.get()) {
+            PlatformLog.e(TAG, "Thread pool is shutting down, tasks cannot be submitted.");
+        } else {
+            try {
+                accepted = pausableExecutor.executeAll(jobs);
+            } catch (Exception e) {
+                PlatformLog.e(TAG, "Error submitting tasks: " + e.getMessage());
             }
-        } catch (RejectedExecutionException e) {
-            Log.e(TAG, "Task rejected: " + e.getMessage());
-        } catch (Exception e) {
-            Log.e(TAG, "Error submitting tasks: " + e.getMessage());
         }
 
-        return jobs;
+        if (accepted < jobs.size()) {
+            PlatformLog.e(TAG, "Tasks rejected: " + (jobs.size() - accepted) + " of " + jobs.size());
+            for (int i = accepted; i < jobs.size(); i++) {
+                jobs.get(i).cancel(false);
+            }
+        }
+        return accepted;
     }
 
     public void pause() {
@@ -262,7 +628,7 @@ public class ThreadPoolManager {
                 pausableExecutor.pause();
                 isPaused.set(true);
                 notifyPoolPaused();
-                Log.i(TAG, "Thread pool paused");
+                PlatformLog.i(TAG, "Thread pool paused");
             }
         } finally {
             pauseLock.unlock();
@@ -275,8 +641,9 @@ public class ThreadPoolManager {
             if (pausableExecutor != null) {
                 pausableExecutor.resume();
                 isPaused.set(false);
+                poolScheduler.onResume();
                 notifyPoolResumed();
-                Log.i(TAG, "Thread pool resumed");
+                PlatformLog.i(TAG, "Thread pool resumed");
             }
         } finally {
             pauseLock.unlock();
@@ -287,20 +654,54 @@ public class ThreadPoolManager {
         return isPaused.get();
     }
 
+    // Holds queued and new tasks with this tag in the queue, running ones finish normally.
+    // Only supported by the thread-pool backend, other backends log and ignore the call.
+    public void pause(String tag) {
+        if (tag == null) {
+            return;
+        }
+        if (!pausableExecutor.supportsTaggedPause()) {
+            PlatformLog.w(TAG, "Tagged pause is not supported by the " + backend + " backend");
+            return;
+        }
+        pausableExecutor.pause(tag);
+        PlatformLog.i(TAG, "Tasks tagged " + tag + " paused");
+    }
+
+    public void resume(String tag) {
+        if (tag == null) {
+            return;
+        }
+        if (!pausableExecutor.supportsTaggedPause()) {
+            PlatformLog.w(TAG, "Tagged pause is not supported by the " + backend + " backend");
+            return;
+        }
+        pausableExecutor.resume(tag);
+        PlatformLog.i(TAG, "Tasks tagged " + tag + " resumed");
+    }
+
     public void close() {
         if (!isShuttingDown.getAndSet(true)) {
             try {
 
                 clearDeadListeners();
 
-                scheduler.shutdownNow();
+                if (adaptiveController != null) {
+                    adaptiveController.stop();
+                }
+
+                if (idleScalingController != null) {
+                    idleScalingController.stop();
+                }
+
+                poolScheduler.shutdown();
 
                 pausableExecutor.shutdown();
                 if (!pausableExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
                     pausableExecutor.shutdownNow();
                 }
                 notifyPoolShutDown();
-                Log.i(TAG, "Thread pool shut down");
+                PlatformLog.i(TAG, "Thread pool shut down");
             } catch (InterruptedException e) {
                 pausableExecutor.shutdownNow();
                 Thread.currentThread().interrupt();
@@ -314,6 +715,140 @@ public class ThreadPoolManager {
         void onPoolShutDown();
     }
 
+    public static class Builder {
+        private boolean sizedForDevice;
+        private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
+        private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+        private long keepAliveTime = DEFAULT_KEEP_ALIVE_TIME;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private Backend backend = Backend.THREAD_POOL;
+        private long priorityAgingMillis = DEFAULT_PRIORITY_AGING_MILLIS;
+        private SaturationPolicy saturationPolicy = SaturationPolicy.ABORT;
+        private long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+        private long adaptiveTargetWaitMillis;
+        private boolean eagerSpawning;
+        private long controlledDelayTargetMillis;
+        private long controlledDelayIntervalMillis;
+        private boolean idleScaleToZero;
+
+        // Pool sizes are derived from the device, explicit sizes are ignored
+        public Builder setSizedForDevice(boolean sizedForDevice) {
+            this.sizedForDevice = sizedForDevice;
+            return this;
+        }
+
+        public Builder setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+            return this;
+        }
+
+        public Builder setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        // Seconds
+        public Builder setKeepAliveTime(long keepAliveTime) {
+            this.keepAliveTime = keepAliveTime;
+            return this;
+        }
+
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder setBackend(Backend backend) {
+            this.backend = backend != null ? backend : Backend.THREAD_POOL;
+            return this;
+        }
+
+        // Time after which a queued task is treated as one priority level higher
+        public Builder setPriorityAging(long agingTime, TimeUnit unit) {
+            this.priorityAgingMillis = Math.max(1L, unit.toMillis(agingTime));
+            return this;
+        }
+
+        // The work-stealing backend only supports ABORT and CALLER_RUNS, other policies reject there
+        public Builder setSaturationPolicy(SaturationPolicy saturationPolicy) {
+            this.saturationPolicy = saturationPolicy != null ? saturationPolicy : SaturationPolicy.ABORT;
+            return this;
+        }
+
+        // Used by SaturationPolicy.BLOCK_WITH_TIMEOUT
+        public Builder setBlockTimeout(long timeout, TimeUnit unit) {
+            this.blockTimeoutMillis = Math.max(0L, unit.toMillis(timeout));
+            return this;
+        }
+
+        // Resizes core threads and queue capacity at runtime to hold the target queue wait,
+        // never above the max pool size. Only applies to the thread-pool backend.
+        public Builder setAdaptiveSizing(long targetQueueWait, TimeUnit unit) {
+            this.adaptiveTargetWaitMillis = Math.max(1L, unit.toMillis(targetQueueWait));
+            return this;
+        }
+
+        // Starts workers up to the max pool size before queueing, idle workers above the
+        // core size still time out after the keep-alive time. Only applies to the thread-pool backend.
+        public Builder setEagerSpawning(boolean eagerSpawning) {
+            this.eagerSpawning = eagerSpawning;
+            return this;
+        }
+
+        // Controlled-delay queue discipline: once queued tasks have waited longer than the target
+        // for a whole interval, workers serve newest first and the stalest tasks are cancelled.
+        // Only applies to the thread-pool backend.
+        public Builder setControlledDelay(long target, long interval, TimeUnit unit) {
+            this.controlledDelayTargetMillis = Math.max(1L, unit.toMillis(target));
+            this.controlledDelayIntervalMillis = Math.max(1L, unit.toMillis(interval));
+            return this;
+        }
+
+        // Core threads also time out after the keep-alive time, so an idle pool holds no threads.
+        // Threads are started again ahead of rising or recurring load. Does not apply to the
+        // work-stealing backend, which retires idle workers on its own.
+        public Builder setIdleScaleToZero(boolean idleScaleToZero) {
+            this.idleScaleToZero = idleScaleToZero;
+            return this;
+        }
+
+        int getCorePoolSize() {
+            return corePoolSize;
+        }
+
+        int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        // For callers that adjust a builder they were handed without changing it for its owner
+        Builder copy() {
+            Builder copy = new Builder();
+            copy.sizedForDevice = sizedForDevice;
+            copy.corePoolSize = corePoolSize;
+            copy.maxPoolSize = maxPoolSize;
+            copy.keepAliveTime = keepAliveTime;
+            copy.queueCapacity = queueCapacity;
+            copy.backend = backend;
+            copy.priorityAgingMillis = priorityAgingMillis;
+            copy.saturationPolicy = saturationPolicy;
+            copy.blockTimeoutMillis = blockTimeoutMillis;
+            copy.adaptiveTargetWaitMillis = adaptiveTargetWaitMillis;
+            copy.eagerSpawning = eagerSpawning;
+            copy.controlledDelayTargetMillis = controlledDelayTargetMillis;
+            copy.controlledDelayIntervalMillis = controlledDelayIntervalMillis;
+            copy.idleScaleToZero = idleScaleToZero;
+            return copy;
+        }
+
+        public ThreadPoolManager build() {
+            return new ThreadPoolManager(this);
+        }
+    }
+
     public void addStateListener(ThreadPoolStateListener listener) {
         if (listener != null) {
             stateListeners.add(new WeakReference<>(listener));
@@ -330,7 +865,6 @@ public class ThreadPoolManager {
         stateListeners.removeIf(ref -> ref.get() == null);
     }
 
-    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
     private void notifyPoolPaused() {
         for (WeakReference<ThreadPoolStateListener> ref : stateListeners) {
             ThreadPoolStateListener listener = ref.get();
@@ -341,7 +875,6 @@ public class ThreadPoolManager {
         clearDeadListeners();
     }
 
-    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
     private void notifyPoolResumed() {
         for (WeakReference<ThreadPoolStateListener> ref : stateListeners) {
             ThreadPoolStateListener listener = ref.get();
@@ -352,7 +885,6 @@ public class ThreadPoolManager {
         clearDeadListeners();
     }
 
-    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
     private void notifyPoolShutDown() {
         for (WeakReference<ThreadPoolStateListener> ref : stateListeners) {
             ThreadPoolStateListener listener = ref.get();
@@ -398,7 +930,7 @@ public class ThreadPoolManager {
                 future.complete(null);
             } catch (Exception e) {
                 future.completeExceptionally(e);
-                Log.e(TAG, "Error in executeWithUiUpdate", e);
+                PlatformLog.e(TAG, "Error in executeWithUiUpdate", e);
             }
         });
 
@@ -406,41 +938,8 @@ public class ThreadPoolManager {
     }
 
     private static void runOnMainThread(Runnable uiTask) {
-        if (uiTask != null && Looper.getMainLooper() != null) {
-            new Handler(Looper.getMainLooper()).post(uiTask);
-        }
-    }
-
-    private static class WeakRunnable implements Runnable {
-        private final WeakReference<Runnable> weakRef;
-
-        WeakRunnable(Runnable task) {
-            this.weakRef = new WeakReference<>(task);
-        }
-
-        @Override
-        public void run() {
-            Runnable task = weakRef.get();
-            if (task != null) {
-                task.run();
-            }
-        }
-    }
-
-    private static class WeakCallable<T> implements Callable<T> {
-        private final WeakReference<Callable<T>> weakRef;
-
-        WeakCallable(Callable<T> task) {
-            this.weakRef = new WeakReference<>(task);
-        }
-
-        @Override
-        public T call() throws Exception {
-            Callable<T> task = weakRef.get();
-            if (task != null) {
-                return task.call();
-            }
-            return null;
+        if (uiTask != null) {
+            Platform.get().getMainThreadExecutor().execute(uiTask);
         }
     }
 
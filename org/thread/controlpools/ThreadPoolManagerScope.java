@@ -7,6 +7,7 @@ import java.util.function.Consumer;
 
 public class ThreadPoolManagerScope implements AutoCloseable {
     private final ThreadPoolManager threadPoolManager;
+    private volatile ThreadPoolJob cleanupJob;
     private final Set<ThreadPoolJob> activeJobs = Collections.synchronizedSet(new HashSet<>());
     private final AtomicBoolean isActive = new AtomicBoolean(true);
     private volatile Consumer<Throwable> globalExceptionHandler;
@@ -117,6 +118,10 @@ public class ThreadPoolManagerScope implements AutoCloseable {
 
             cancelAllJobs();
 
+            if (cleanupJob != null) {
+                cleanupJob.cancel();
+            }
+
             if (parentScope != null) {
                 parentScope.removeChildScope(this);
                 parentScope = null;
@@ -198,21 +203,12 @@ public class ThreadPoolManagerScope implements AutoCloseable {
         }
     }
 
+    // Periodic sweep on the manager's timer, so the scope does not hold a worker for its lifetime
     private void startAutoCleanup() {
-        threadPoolManager.execute(() -> {
-            while (isActive() && !threadPoolManager.getExecutorService().isShutdown()) {
-                try {
-                    TimeUnit.SECONDS.sleep(5);
-                    threadPoolManager.removeCompletedTasks();
-
-                    synchronized (activeJobs) {
-                        activeJobs.removeIf(job -> job.isDone() || job.isCancelled());
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+        cleanupJob = threadPoolManager.scheduleWithFixedDelay(() -> {
+            synchronized (activeJobs) {
+                activeJobs.removeIf(job -> job.isDone() || job.isCancelled());
             }
-        });
+        }, 5, 5, TimeUnit.SECONDS);
     }
 }
\ No newline at end of file
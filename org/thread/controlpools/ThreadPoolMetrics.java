@@ -0,0 +1,178 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms fed by the worker hooks of the pool executors. Recording only
+ * touches striped counters, reading goes through {@link #snapshot}.
+ */
+public class ThreadPoolMetrics {
+    private final LongAdder submittedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder failedTasks = new LongAdder();
+    private final LongAdder deadlineExceededTasks = new LongAdder();
+    private final LongAdder shedTasks = new LongAdder();
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private final AtomicInteger peakActiveThreads = new AtomicInteger();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    ThreadPoolMetrics() {
+    }
+
+    // Once per task handed to the pool, whether it is then queued, run by the caller, spilled or rejected
+    void recordSubmitted() {
+        submittedTasks.increment();
+    }
+
+    void recordSubmitted(int count) {
+        submittedTasks.add(count);
+    }
+
+    void recordRejected() {
+        rejectedTasks.increment();
+    }
+
+    void recordStart(long waitNanos) {
+        queueWait.record(waitNanos);
+        int active = activeThreads.incrementAndGet();
+        int peak;
+        while (active > (peak = peakActiveThreads.get())) {
+            if (peakActiveThreads.compareAndSet(peak, active)) {
+                break;
+            }
+        }
+    }
+
+    void recordCompletion(long executionNanos, boolean failed) {
+        activeThreads.decrementAndGet();
+        execution.record(executionNanos);
+        completedTasks.increment();
+        if (failed) {
+            failedTasks.increment();
+        }
+    }
+
+    // Dropped at pickup, so it counts against active threads but not against execution time
+    void recordDeadlineExceeded() {
+        activeThreads.decrementAndGet();
+        deadlineExceededTasks.increment();
+    }
+
+    void recordShed() {
+        shedTasks.increment();
+    }
+
+    long getSubmittedTasks() {
+        return submittedTasks.sum();
+    }
+
+    int getActiveThreads() {
+        return activeThreads.get();
+    }
+
+    long getStartedTasks() {
+        return queueWait.getCount();
+    }
+
+    long getCompletedTasks() {
+        return execution.getCount();
+    }
+
+    long getTotalQueueWaitNanos() {
+        return queueWait.getSumNanos();
+    }
+
+    long getTotalServiceNanos() {
+        return execution.getSumNanos();
+    }
+
+    Snapshot snapshot(int poolSize, int largestPoolSize, int queueSize, int queueHighWaterMark) {
+        return new Snapshot(
+                submittedTasks.sum(),
+                completedTasks.sum(),
+                rejectedTasks.sum(),
+                failedTasks.sum(),
+                deadlineExceededTasks.sum(),
+                shedTasks.sum(),
+                activeThreads.get(),
+                peakActiveThreads.get(),
+                poolSize,
+                largestPoolSize,
+                queueSize,
+                queueHighWaterMark,
+                queueWait.snapshot(),
+                execution.snapshot()
+        );
+    }
+
+    public static class Snapshot {
+        public final long submittedTasks;
+        public final long completedTasks;
+        public final long rejectedTasks;
+        public final long failedTasks;
+        public final long deadlineExceededTasks;
+        public final long shedTasks;
+        public final int activeThreads;
+        public final int peakActiveThreads;
+        public final int poolSize;
+        public final int largestPoolSize;
+        public final int queueSize;
+        public final int queueHighWaterMark;
+        public final LatencyHistogram.Snapshot queueWait;
+        public final LatencyHistogram.Snapshot execution;
+
+        Snapshot(
+            long submittedTasks,
+            long completedTasks,
+            long rejectedTasks,
+            long failedTasks,
+            long deadlineExceededTasks,
+            long shedTasks,
+            int activeThreads,
+            int peakActiveThreads,
+            int poolSize,
+            int largestPoolSize,
+            int queueSize,
+            int queueHighWaterMark,
+            LatencyHistogram.Snapshot queueWait,
+            LatencyHistogram.Snapshot execution
+        ) {
+            this.submittedTasks = submittedTasks;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.failedTasks = failedTasks;
+            this.deadlineExceededTasks = deadlineExceededTasks;
+            this.shedTasks = shedTasks;
+            this.activeThreads = activeThreads;
+            this.peakActiveThreads = peakActiveThreads;
+            this.poolSize = poolSize;
+            this.largestPoolSize = largestPoolSize;
+            this.queueSize = queueSize;
+            this.queueHighWaterMark = queueHighWaterMark;
+            this.queueWait = queueWait;
+            this.execution = execution;
+        }
+
+        @Override
+        public String toString() {
+            return "ThreadPoolMetrics{submitted=" + submittedTasks +
+                    ", completed=" + completedTasks +
+                    ", rejected=" + rejectedTasks +
+                    ", failed=" + failedTasks +
+                    ", deadlineExceeded=" + deadlineExceededTasks +
+                    ", shed=" + shedTasks +
+                    ", active=" + activeThreads +
+                    ", peakActive=" + peakActiveThreads +
+                    ", poolSize=" + poolSize +
+                    ", largestPoolSize=" + largestPoolSize +
+                    ", queueSize=" + queueSize +
+                    ", queueHighWaterMark=" + queueHighWaterMark +
+                    ", queueWait=" + queueWait +
+                    ", execution=" + execution +
+                    '}';
+        }
+    }
+}
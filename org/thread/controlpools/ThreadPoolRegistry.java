@@ -0,0 +1,182 @@
+package org.thread.controlpools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named pools with separate thread and queue budgets, so one workload saturating its pool cannot
+ * starve the others. The thread budgets of all pools share one global cap, a pool that asks for
+ * more than is left gets the remainder. Registering with no threads left fails until another
+ * pool is closed.
+ */
+public class ThreadPoolRegistry {
+    private static final String TAG = "ThreadPoolRegistry";
+    private static final int WEAK_DEVICE_THREAD_CAP = 4;
+    private static final int THREADS_PER_PROCESSOR = 2;
+
+    private final int maxTotalThreads;
+    private final Map<String, Entry> pools = new LinkedHashMap<>();
+    private int allocatedThreads;
+
+    public ThreadPoolRegistry(int maxTotalThreads) {
+        if (maxTotalThreads <= 0) {
+            throw new IllegalArgumentException("Thread cap must be positive");
+        }
+        this.maxTotalThreads = maxTotalThreads;
+    }
+
+    // Derives the global cap from the device, on Android call AndroidPlatform.init() first
+    public ThreadPoolRegistry() {
+        this(isWeakDevice()
+                ? WEAK_DEVICE_THREAD_CAP
+                : Math.max(WEAK_DEVICE_THREAD_CAP, Runtime.getRuntime().availableProcessors() * THREADS_PER_PROCESSOR));
+    }
+
+    // Threads above the first are started on demand and time out when idle
+    public ThreadPoolManager register(String name, int maxThreads, int queueCapacity) {
+        return register(name, new ThreadPoolManager.Builder()
+                .setCorePoolSize(1)
+                .setMaxPoolSize(maxThreads)
+                .setQueueCapacity(queueCapacity)
+                .setEagerSpawning(true));
+    }
+
+    // The builder's max pool size is the requested thread budget, device-derived sizing is
+    // replaced by the budget. The builder itself is left unchanged.
+    public synchronized ThreadPoolManager register(String name, ThreadPoolManager.Builder builder) {
+        if (name == null || builder == null) {
+            throw new IllegalArgumentException("Pool name and builder must not be null");
+        }
+        if (pools.containsKey(name)) {
+            throw new IllegalStateException("Pool " + name + " is already registered");
+        }
+
+        int remaining = maxTotalThreads - allocatedThreads;
+        if (remaining <= 0) {
+            throw new IllegalStateException("No threads left in the budget of " + maxTotalThreads
+                    + " for pool " + name);
+        }
+
+        int requested = Math.max(1, builder.getMaxPoolSize());
+        int granted = Math.min(requested, remaining);
+        if (granted < requested) {
+            PlatformLog.w(TAG, "Pool " + name + " asked for " + requested + " threads, granted " + granted);
+        }
+
+        ThreadPoolManager manager = builder.copy()
+                .setSizedForDevice(false)
+                .setCorePoolSize(Math.min(builder.getCorePoolSize(), granted))
+                .setMaxPoolSize(granted)
+                .build();
+        pools.put(name, new Entry(manager, granted, builder.getQueueCapacity()));
+        allocatedThreads += granted;
+        return manager;
+    }
+
+    public synchronized ThreadPoolManager get(String name) {
+        Entry entry = pools.get(name);
+        return entry != null ? entry.manager : null;
+    }
+
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(pools.keySet());
+    }
+
+    public int getMaxTotalThreads() {
+        return maxTotalThreads;
+    }
+
+    public synchronized int getAllocatedThreads() {
+        return allocatedThreads;
+    }
+
+    public synchronized PoolStats getStats(String name) {
+        Entry entry = pools.get(name);
+        return entry != null ? entry.toStats(name) : null;
+    }
+
+    public synchronized List<PoolStats> getStats() {
+        List<PoolStats> stats = new ArrayList<>(pools.size());
+        for (Map.Entry<String, Entry> entry : pools.entrySet()) {
+            stats.add(entry.getValue().toStats(entry.getKey()));
+        }
+        return stats;
+    }
+
+    // Closes one pool and returns its threads to the global budget
+    public void close(String name) {
+        Entry entry;
+        synchronized (this) {
+            entry = pools.remove(name);
+            if (entry == null) {
+                return;
+            }
+            allocatedThreads -= entry.maxThreads;
+        }
+        entry.manager.close();
+    }
+
+    public void closeAll() {
+        List<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(pools.values());
+            pools.clear();
+            allocatedThreads = 0;
+        }
+
+        // Stop intake everywhere first so the pools drain in parallel
+        for (Entry entry : entries) {
+            entry.manager.getExecutorService().shutdown();
+        }
+        for (Entry entry : entries) {
+            entry.manager.close();
+        }
+    }
+
+    public static class PoolStats {
+        public final String name;
+        public final int maxThreads;
+        public final int queueCapacity;
+        public final ThreadPoolMetrics.Snapshot metrics;
+
+        PoolStats(String name, int maxThreads, int queueCapacity, ThreadPoolMetrics.Snapshot metrics) {
+            this.name = name;
+            this.maxThreads = maxThreads;
+            this.queueCapacity = queueCapacity;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{name=" + name +
+                    ", maxThreads=" + maxThreads +
+                    ", queueCapacity=" + queueCapacity +
+                    ", metrics=" + metrics +
+                    '}';
+        }
+    }
+
+    // Without a profile the device is treated as weak, like everywhere else
+    private static boolean isWeakDevice() {
+        DeviceProfile profile = DeviceProfile.get();
+        return profile == null || profile.isWeakDevice();
+    }
+
+    private static class Entry {
+        final ThreadPoolManager manager;
+        final int maxThreads;
+        final int queueCapacity;
+
+        Entry(ThreadPoolManager manager, int maxThreads, int queueCapacity) {
+            this.manager = manager;
+            this.maxThreads = maxThreads;
+            this.queueCapacity = queueCapacity;
+        }
+
+        PoolStats toStats(String name) {
+            return new PoolStats(name, maxThreads, queueCapacity, manager.getMetrics());
+        }
+    }
+}
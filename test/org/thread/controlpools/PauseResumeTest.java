@@ -0,0 +1,59 @@
+package org.thread.controlpools;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tasks held by a pause must run after the matching resume even when no worker is alive. Not
+ * part of the library, compile it together with the library sources and run main().
+ */
+public class PauseResumeTest {
+    private static final long TIMEOUT_MILLIS = 2000L;
+
+    public static void main(String[] args) throws Exception {
+        taggedResumeStartsWorker();
+        resumeStartsWorkerWithoutCoreThreads();
+        System.out.println("PauseResumeTest passed");
+    }
+
+    // Fresh pool: the held task was queued without a worker, only resume(tag) can start one
+    private static void taggedResumeStartsWorker() throws Exception {
+        ThreadPoolManager manager = newManager(1);
+        try {
+            manager.pause("x");
+            ThreadPoolJob job = manager.execute(() -> { }, "x");
+            manager.resume("x");
+            expectDone(job, "task tagged x after resume(x)");
+        } finally {
+            manager.close();
+        }
+    }
+
+    // Without core threads prestartCoreThread() starts nothing
+    private static void resumeStartsWorkerWithoutCoreThreads() throws Exception {
+        ThreadPoolManager manager = newManager(0);
+        try {
+            manager.pause();
+            ThreadPoolJob job = manager.execute(() -> { });
+            manager.resume();
+            expectDone(job, "task after resume() with core size 0");
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static ThreadPoolManager newManager(int corePoolSize) {
+        return new ThreadPoolManager.Builder()
+                .setCorePoolSize(corePoolSize)
+                .setMaxPoolSize(2)
+                .setQueueCapacity(16)
+                .build();
+    }
+
+    private static void expectDone(ThreadPoolJob job, String what) throws Exception {
+        try {
+            job.await(TIMEOUT_MILLIS);
+        } catch (TimeoutException e) {
+            throw new AssertionError("Stranded: " + what);
+        }
+    }
+}